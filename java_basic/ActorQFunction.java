@@ -0,0 +1,90 @@
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ActorQFunction implements QFunction {
+
+    // One actor of an AsyncLearner: decides with the learner's last published network and the
+    // statistics published with it, and hands its transitions over in batches
+    private final AsyncLearner asyncLearner;
+
+    // Own copy of the published network, which picks up a newly published one at the next evaluation
+    private final EncogQFunction network;
+    private final NormalizedQFunction acting;
+    private BasicNetwork publishedFrom;
+
+    private ReplayBuffer pendingTransitions;
+
+    public ActorQFunction(AsyncLearner asyncLearner) {
+        this.asyncLearner = asyncLearner;
+
+        publishedFrom = asyncLearner.getPublishedNetwork();
+        network = new EncogQFunction((BasicNetwork) publishedFrom.clone());
+        acting = new NormalizedQFunction(network, asyncLearner::getPublishedNormalizer);
+
+        pendingTransitions = asyncLearner.obtainBatch();
+    }
+
+    private void syncPublishedNetwork() {
+        // A published network is never modified again, so it is safe to read without locking
+        BasicNetwork published = asyncLearner.getPublishedNetwork();
+
+        if (published != publishedFrom) {
+            NetworkWeights.copy(published, network.getNetwork());
+            network.weightsChanged();
+            publishedFrom = published;
+        }
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        syncPublishedNetwork();
+        acting.evaluate(states, actions, out, count);
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        syncPublishedNetwork();
+        acting.computeQValues(state, output);
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        throw new IllegalStateException("Cannot train on Q-value targets while an async learner owns the network");
+    }
+
+    @Override
+    public int getVersion() {
+        // Being behind the learner's last published network counts as new weights too
+        syncPublishedNetwork();
+
+        return acting.getVersion();
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        // Hand a full batch over to the learner thread and keep collecting into a fresh one
+        if (pendingTransitions.size() == pendingTransitions.getCapacity()) {
+            asyncLearner.submit(pendingTransitions);
+            pendingTransitions = asyncLearner.obtainBatch();
+        }
+
+        pendingTransitions.add(state, action, reward, nextState, done);
+    }
+
+    @Override
+    public double commit() {
+        // Doesn't wait for training, the learner picks the batch up whenever it is ready (unless it
+        // is already AsyncLearner.MAX_PENDING_BATCHES behind)
+        asyncLearner.submit(pendingTransitions);
+        pendingTransitions = asyncLearner.obtainBatch();
+
+        return asyncLearner.getLastError();
+    }
+
+    public EncogQFunction getNetwork() {
+        return network;
+    }
+}
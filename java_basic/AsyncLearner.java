@@ -0,0 +1,215 @@
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class AsyncLearner implements Runnable {
+
+    public static final int DEFAULT_BATCH_CAPACITY = 16384;
+
+    // Submitted batches the learner hasn't taken yet before submit() makes actors wait. Without a
+    // bound, actors that outrun a training round queue batches until the heap runs out
+    public static final int MAX_PENDING_BATCHES = 16;
+
+    // Trains on its own network, nothing else ever touches it
+    private final QLearner learner;
+
+    // Snapshot of the learner's network that actors play with. A fresh copy is published after
+    // every round and never written again, so actors can use it without any locking
+    private volatile BasicNetwork publishedNetwork;
+    private volatile InputNormalizer publishedNormalizer;
+    private volatile int publishedVersion;
+    private volatile double lastError;
+
+    // Actors hand full batches over through submitted, the learner hands them back empty through free
+    private final ConcurrentLinkedQueue<ReplayBuffer> submitted;
+    private final ConcurrentLinkedQueue<ReplayBuffer> free;
+    private final AtomicInteger pendingBatches;
+
+    // Time the learner thread spent training and publishing, for utilization reports. A round in
+    // progress counts up to now, otherwise a report taken mid-round shows nothing and the next one
+    // gets the whole round (and more than 100%). Guarded by busyLock, taken twice per round. Not by
+    // this: stop() joins the learner thread while holding it
+    private final Object busyLock = new Object();
+    private long busyNanos;
+    private long busyStart;
+    private boolean busy;
+
+    private volatile boolean running;
+    // Written by start() and stop(), read by actors in submit()
+    private volatile Thread thread;
+
+    public AsyncLearner(QLearner learner) {
+        this.learner = learner;
+
+        publishedNormalizer = copyNormalizer();
+        publishedNetwork = (BasicNetwork) learner.getNetwork().clone();
+        publishedVersion = 0;
+        lastError = Double.NaN;
+
+        submitted = new ConcurrentLinkedQueue<>();
+        free = new ConcurrentLinkedQueue<>();
+        pendingBatches = new AtomicInteger();
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Learner already started");
+        }
+
+        running = true;
+        Thread learnerThread = new Thread(this, "AsyncLearner");
+        learnerThread.setDaemon(true);
+        learnerThread.start();
+        thread = learnerThread;
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            boolean newData = drainSubmitted();
+
+            if (!newData) {
+                // Nothing new to learn from yet
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+
+            beginBusy();
+
+            lastError = learner.train();
+
+            // Publish a snapshot: the volatile write makes the copied weights visible to whoever reads it.
+            // The normalizer goes first, so a reader of the new network finds statistics at least as new
+            publishedNormalizer = copyNormalizer();
+            publishedNetwork = (BasicNetwork) learner.getNetwork().clone();
+            publishedVersion++;
+
+            endBusy();
+        }
+    }
+
+    private void beginBusy() {
+        synchronized (busyLock) {
+            busyStart = System.nanoTime();
+            busy = true;
+        }
+    }
+
+    private void endBusy() {
+        synchronized (busyLock) {
+            busyNanos += System.nanoTime() - busyStart;
+            busy = false;
+        }
+    }
+
+    private InputNormalizer copyNormalizer() {
+        // Frozen, actors only ever read it
+        InputNormalizer normalizer = learner.getNormalizer();
+
+        if (normalizer == null) {
+            return null;
+        }
+
+        InputNormalizer copy = normalizer.copy();
+        copy.setFrozen(true);
+
+        return copy;
+    }
+
+    private boolean drainSubmitted() {
+        boolean drained = false;
+        ReplayBuffer batch;
+
+        while ((batch = submitted.poll()) != null) {
+            pendingBatches.decrementAndGet();
+            beginBusy();
+
+            learner.addTransitions(batch);
+            batch.clear();
+            free.offer(batch);
+
+            endBusy();
+            drained = true;
+        }
+
+        return drained;
+    }
+
+    public ReplayBuffer obtainBatch() {
+        // Reuse a batch the learner is done with, only allocate while the pool warms up
+        ReplayBuffer batch = free.poll();
+
+        return batch != null ? batch : new ReplayBuffer(DEFAULT_BATCH_CAPACITY, QPaddleController.STATE_SIZE);
+    }
+
+    public void submit(ReplayBuffer batch) {
+        if (batch.size() > 0) {
+            // Back-pressure: wait for the learner to catch up, unless it has been stopped
+            while (pendingBatches.get() >= MAX_PENDING_BATCHES && running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+
+            pendingBatches.incrementAndGet();
+            submitted.offer(batch);
+
+            // Read once, stop() may clear it meanwhile (unparking a stopped thread does nothing)
+            Thread learnerThread = thread;
+
+            if (learnerThread != null) {
+                LockSupport.unpark(learnerThread);
+            }
+        } else {
+            free.offer(batch);
+        }
+    }
+
+    public void save(String filename) throws IOException {
+        // The learner's own network keeps changing on its thread, so what gets saved is the last published copy
+        EncogQFunction.save(filename, publishedNetwork, publishedNormalizer);
+    }
+
+    public BasicNetwork getPublishedNetwork() {
+        return publishedNetwork;
+    }
+
+    public InputNormalizer getPublishedNormalizer() {
+        return publishedNormalizer;
+    }
+
+    public int getPublishedVersion() {
+        return publishedVersion;
+    }
+
+    public double getLastError() {
+        return lastError;
+    }
+
+    public long getBusyNanos() {
+        synchronized (busyLock) {
+            return busy ? busyNanos + System.nanoTime() - busyStart : busyNanos;
+        }
+    }
+
+    public QLearner getLearner() {
+        return learner;
+    }
+}
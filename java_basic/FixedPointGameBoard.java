@@ -0,0 +1,376 @@
+
+import java.awt.geom.Point2D;
+import java.util.SplittableRandom;
+
+/**
+ * GameBoard's physics in 16.16 fixed point. It is for determinism (integer math
+ * plays the same on every JVM) and for packing a board into PACKED_SIZE ints, not
+ * for speed: GameBoardBenchmark doesn't show it reliably faster than GameBoard. The
+ * physics is a hand copy of GameBoard's, so GameBoardBenchmark checks the two step
+ * by step.
+ *
+ * @author Andres
+ */
+public final class FixedPointGameBoard {
+
+    // Every coordinate is a 16.16 fixed-point int
+    public static final int FRACTION_BITS = 16;
+    public static final int ONE = 1 << FRACTION_BITS;
+
+    // Number of ints written by packInto() and read by unpackFrom()
+    public static final int PACKED_SIZE = 11;
+
+    private static final int PADDLE_WIDTH = toFixed(GameBoard.PADDLE_WIDTH);
+    private static final int PADDLE_HEIGHT = toFixed(GameBoard.PADDLE_HEIGHT);
+    private static final int BALL_DIAMETER = toFixed(GameBoard.BALL_DIAMETER);
+    private static final int PADDLE_MAX_SPEED = toFixed(GameBoard.PADDLE_MAX_SPEED);
+    private static final int PADDLE_WALL_FACTOR = toFixed(-(1 - GameBoard.PADDLE_WALL_SPEED_LOSS));
+    private static final int DT = toFixed(GameBoard.DT);
+
+    private final int width;
+    private final int height;
+
+    private final boolean leftPaddle;
+    private int leftPaddleY;
+    private int leftPaddleVelocityY;
+    private int leftPaddleAccelerationY;
+
+    private final boolean rightPaddle;
+    private int rightPaddleY;
+    private int rightPaddleVelocityY;
+    private int rightPaddleAccelerationY;
+
+    // The ball never accelerates in GameBoard either, so there is no ball acceleration here
+    private int ballX;
+    private int ballY;
+    private int ballVelocityX;
+    private int ballVelocityY;
+
+    private boolean done;
+    private int whoLost;
+    private int leftScore;
+    private int rightScore;
+
+    private boolean leftHit;
+    private boolean rightHit;
+
+    private final SplittableRandom random;
+
+    // Reused by the Point2D getters
+    private final Point2D.Double ballPosition;
+    private final Point2D.Double ballVelocity;
+
+    public FixedPointGameBoard(double width, double height, boolean leftPaddle, boolean rightPaddle) {
+        this(width, height, leftPaddle, rightPaddle, new SplittableRandom());
+    }
+
+    public FixedPointGameBoard(double width, double height, boolean leftPaddle, boolean rightPaddle, SplittableRandom random) {
+        this.width = toFixed(width);
+        this.height = toFixed(height);
+
+        this.leftPaddle = leftPaddle;
+        this.rightPaddle = rightPaddle;
+
+        this.random = random;
+
+        ballPosition = new Point2D.Double();
+        ballVelocity = new Point2D.Double();
+
+        reset();
+
+        leftScore = 0;
+        rightScore = 0;
+    }
+
+    public static int toFixed(double value) {
+        return (int) Math.round(value * ONE);
+    }
+
+    public static double toDouble(int value) {
+        return value / (double) ONE;
+    }
+
+    private static int multiply(int a, int b) {
+        return (int) (((long) a * b) >> FRACTION_BITS);
+    }
+
+    public void randomizeBall() {
+        // StrictMath gives the same serve on every JVM
+        double randomX = toDouble(width) / 2 + random.nextDouble() * (toDouble(width) / 2 - GameBoard.BALL_DIAMETER - GameBoard.PADDLE_WIDTH);
+        double randomY = random.nextDouble() * (toDouble(height) - GameBoard.BALL_DIAMETER);
+
+        ballX = toFixed(randomX);
+        ballY = toFixed(randomY);
+
+        double velocityAngle = 2 * StrictMath.PI / 3 + random.nextDouble() * (4 * StrictMath.PI / 3 - 2 * StrictMath.PI / 3);
+
+        ballVelocityX = toFixed(GameBoard.BALL_SPEED * StrictMath.cos(velocityAngle));
+        ballVelocityY = toFixed(GameBoard.BALL_SPEED * StrictMath.sin(velocityAngle));
+    }
+
+    public void update() {
+        leftHit = false;
+        rightHit = false;
+
+        if (done) {
+            return;
+        }
+
+        int paddleTop = height - PADDLE_HEIGHT + ONE;
+
+        // Check if left paddle achieved maximum speed
+        if (leftPaddleVelocityY >= PADDLE_MAX_SPEED) {
+            leftPaddleVelocityY = PADDLE_MAX_SPEED;
+        } else if (leftPaddleVelocityY <= -PADDLE_MAX_SPEED) {
+            leftPaddleVelocityY = -PADDLE_MAX_SPEED;
+        }
+
+        // Check if left paddle reached a top/bottom wall
+        if (leftPaddleY < 0) {
+            leftPaddleY = 0;
+            leftPaddleVelocityY = multiply(leftPaddleVelocityY, PADDLE_WALL_FACTOR);
+        }
+
+        if (leftPaddleY > paddleTop) {
+            leftPaddleY = paddleTop;
+            leftPaddleVelocityY = multiply(leftPaddleVelocityY, PADDLE_WALL_FACTOR);
+        }
+
+        // Update the left paddle velocity and position
+        leftPaddleVelocityY += multiply(leftPaddleAccelerationY, DT);
+        leftPaddleY += multiply(leftPaddleVelocityY, DT);
+
+        // Check if right paddle achieved maximum speed
+        if (rightPaddleVelocityY >= PADDLE_MAX_SPEED) {
+            rightPaddleVelocityY = PADDLE_MAX_SPEED;
+        } else if (rightPaddleVelocityY <= -PADDLE_MAX_SPEED) {
+            rightPaddleVelocityY = -PADDLE_MAX_SPEED;
+        }
+
+        // Check if right paddle reached a top/bottom wall
+        if (rightPaddleY < 0) {
+            rightPaddleY = 0;
+            rightPaddleVelocityY = multiply(rightPaddleVelocityY, PADDLE_WALL_FACTOR);
+        }
+
+        if (rightPaddleY > paddleTop) {
+            rightPaddleY = paddleTop;
+            rightPaddleVelocityY = multiply(rightPaddleVelocityY, PADDLE_WALL_FACTOR);
+        }
+
+        // Update the right paddle velocity and position
+        rightPaddleVelocityY += multiply(rightPaddleAccelerationY, DT);
+        rightPaddleY += multiply(rightPaddleVelocityY, DT);
+
+        // Check if the ball hit the left paddle
+        if (ballX < PADDLE_WIDTH) {
+            if (!leftPaddle || (ballY + BALL_DIAMETER >= leftPaddleY && ballY <= leftPaddleY + PADDLE_HEIGHT)) {
+                ballVelocityX = -ballVelocityX;
+                leftHit = true;
+            } else {
+                done = true;
+                whoLost = GameBoard.LEFT_LOST;
+
+                if (rightPaddle) {
+                    rightScore++;
+                }
+
+                return;
+            }
+        }
+
+        // Check if the ball hit the right paddle
+        if (ballX + BALL_DIAMETER > width - PADDLE_WIDTH) {
+            if (!rightPaddle || (ballY + BALL_DIAMETER >= rightPaddleY && ballY <= rightPaddleY + PADDLE_HEIGHT)) {
+                ballVelocityX = -ballVelocityX;
+                rightHit = true;
+            } else {
+                done = true;
+                whoLost = GameBoard.RIGHT_LOST;
+
+                if (leftPaddle) {
+                    leftScore++;
+                }
+
+                return;
+            }
+        }
+
+        // Check if the ball hit a top/bottom wall
+        if (ballY <= 0 || ballY >= height - BALL_DIAMETER) {
+            ballVelocityY = -ballVelocityY;
+        }
+
+        // Check if the ball hit a left/right wall
+        if (ballX <= 0 || ballX >= width - BALL_DIAMETER) {
+            ballVelocityX = -ballVelocityX;
+        }
+
+        // Update the ball position
+        ballX += multiply(ballVelocityX, DT);
+        ballY += multiply(ballVelocityY, DT);
+    }
+
+    public void reset() {
+        leftPaddleY = (height - PADDLE_HEIGHT) / 2;
+        leftPaddleVelocityY = 0;
+        leftPaddleAccelerationY = 0;
+
+        rightPaddleY = (height - PADDLE_HEIGHT) / 2;
+        rightPaddleVelocityY = 0;
+        rightPaddleAccelerationY = 0;
+
+        randomizeBall();
+
+        done = false;
+        whoLost = GameBoard.NONE_LOST;
+        leftHit = false;
+        rightHit = false;
+    }
+
+    public void copyFrom(GameBoard board) {
+        leftPaddleY = toFixed(board.getLeftPaddleY());
+        leftPaddleVelocityY = toFixed(board.getLeftPaddleVelocityY());
+        leftPaddleAccelerationY = toFixed(board.getLeftPaddleAccelerationY());
+
+        rightPaddleY = toFixed(board.getRightPaddleY());
+        rightPaddleVelocityY = toFixed(board.getRightPaddleVelocityY());
+        rightPaddleAccelerationY = toFixed(board.getRightPaddleAccelerationY());
+
+        ballX = toFixed(board.getBallPosition().x);
+        ballY = toFixed(board.getBallPosition().y);
+        ballVelocityX = toFixed(board.getBallVelocity().x);
+        ballVelocityY = toFixed(board.getBallVelocity().y);
+
+        done = board.isDone();
+        whoLost = board.getWhoLost();
+        leftScore = board.getLeftScore();
+        rightScore = board.getRightScore();
+    }
+
+    public void packInto(int[] packed, int offset) {
+        packed[offset] = leftPaddleY;
+        packed[offset + 1] = leftPaddleVelocityY;
+        packed[offset + 2] = leftPaddleAccelerationY;
+        packed[offset + 3] = rightPaddleY;
+        packed[offset + 4] = rightPaddleVelocityY;
+        packed[offset + 5] = rightPaddleAccelerationY;
+        packed[offset + 6] = ballX;
+        packed[offset + 7] = ballY;
+        packed[offset + 8] = ballVelocityX;
+        packed[offset + 9] = ballVelocityY;
+
+        // Bit 0: done, bits 1-2: whoLost + 1, bits 3-16: left score, bits 17-30: right score
+        packed[offset + 10] = (done ? 1 : 0) | (whoLost + 1) << 1 | (leftScore & 0x3FFF) << 3 | (rightScore & 0x3FFF) << 17;
+    }
+
+    public void unpackFrom(int[] packed, int offset) {
+        leftPaddleY = packed[offset];
+        leftPaddleVelocityY = packed[offset + 1];
+        leftPaddleAccelerationY = packed[offset + 2];
+        rightPaddleY = packed[offset + 3];
+        rightPaddleVelocityY = packed[offset + 4];
+        rightPaddleAccelerationY = packed[offset + 5];
+        ballX = packed[offset + 6];
+        ballY = packed[offset + 7];
+        ballVelocityX = packed[offset + 8];
+        ballVelocityY = packed[offset + 9];
+
+        int status = packed[offset + 10];
+        done = (status & 1) != 0;
+        whoLost = ((status >> 1) & 3) - 1;
+        leftScore = (status >> 3) & 0x3FFF;
+        rightScore = (status >> 17) & 0x3FFF;
+    }
+
+    public double getWidth() {
+        return toDouble(width);
+    }
+
+    public double getHeight() {
+        return toDouble(height);
+    }
+
+    public boolean hasLeftPaddle() {
+        return leftPaddle;
+    }
+
+    public double getLeftPaddleY() {
+        return toDouble(leftPaddleY);
+    }
+
+    public boolean hasRightPaddle() {
+        return rightPaddle;
+    }
+
+    public double getRightPaddleY() {
+        return toDouble(rightPaddleY);
+    }
+
+    public double getLeftPaddleVelocityY() {
+        return toDouble(leftPaddleVelocityY);
+    }
+
+    public double getRightPaddleVelocityY() {
+        return toDouble(rightPaddleVelocityY);
+    }
+
+    public double getLeftPaddleAccelerationY() {
+        return toDouble(leftPaddleAccelerationY);
+    }
+
+    public double getRightPaddleAccelerationY() {
+        return toDouble(rightPaddleAccelerationY);
+    }
+
+    public void setLeftPaddleAccelerationY(double leftPaddleAccelerationY) {
+        this.leftPaddleAccelerationY = toFixed(leftPaddleAccelerationY);
+    }
+
+    public void setRightPaddleAccelerationY(double rightPaddleAccelerationY) {
+        this.rightPaddleAccelerationY = toFixed(rightPaddleAccelerationY);
+    }
+
+    public Point2D.Double getBallPosition() {
+        ballPosition.setLocation(toDouble(ballX), toDouble(ballY));
+        return ballPosition;
+    }
+
+    public Point2D.Double getBallVelocity() {
+        ballVelocity.setLocation(toDouble(ballVelocityX), toDouble(ballVelocityY));
+        return ballVelocity;
+    }
+
+    public boolean isLeftHit() {
+        return leftHit;
+    }
+
+    public boolean isRightHit() {
+        return rightHit;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+
+    public int getWhoLost() {
+        return whoLost;
+    }
+
+    public int getLeftScore() {
+        return leftScore;
+    }
+
+    public int getRightScore() {
+        return rightScore;
+    }
+
+    public void resetScores() {
+        leftScore = 0;
+        rightScore = 0;
+    }
+}
@@ -0,0 +1,407 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public final class GameBoardBatch {
+
+    private final int size;
+
+    private final double width;
+    private final double height;
+
+    private final boolean leftPaddle;
+    final double[] leftPaddleY;
+    final double[] leftPaddleVelocityY;
+    final double[] leftPaddleAccelerationY;
+
+    private final boolean rightPaddle;
+    final double[] rightPaddleY;
+    final double[] rightPaddleVelocityY;
+    final double[] rightPaddleAccelerationY;
+
+    final double[] ballX;
+    final double[] ballY;
+    final double[] ballVelocityX;
+    final double[] ballVelocityY;
+    final double[] ballAccelerationX;
+    final double[] ballAccelerationY;
+
+    final boolean[] done;
+    final int[] whoLost;
+    final int[] leftScore;
+    final int[] rightScore;
+
+    // Hit flags produced by the last call to update()
+    final boolean[] leftHit;
+    final boolean[] rightHit;
+
+    // One stream for the whole batch, since a batch is only ever stepped by one thread
+    private final SplittableRandom random;
+
+    // SIMD engine, or null when jdk.incubator.vector isn't available to this JVM
+    private static final Stepper VECTOR_STEPPER = loadVectorStepper();
+
+    interface Stepper {
+
+        void update(GameBoardBatch batch);
+    }
+
+    public GameBoardBatch(int size, double width, double height, boolean leftPaddle, boolean rightPaddle) {
+        this(size, width, height, leftPaddle, rightPaddle, new SplittableRandom());
+    }
+
+    public GameBoardBatch(int size, double width, double height, boolean leftPaddle, boolean rightPaddle, SplittableRandom random) {
+        this.size = size;
+        this.width = width;
+        this.height = height;
+
+        this.leftPaddle = leftPaddle;
+        leftPaddleY = new double[size];
+        leftPaddleVelocityY = new double[size];
+        leftPaddleAccelerationY = new double[size];
+
+        this.rightPaddle = rightPaddle;
+        rightPaddleY = new double[size];
+        rightPaddleVelocityY = new double[size];
+        rightPaddleAccelerationY = new double[size];
+
+        ballX = new double[size];
+        ballY = new double[size];
+        ballVelocityX = new double[size];
+        ballVelocityY = new double[size];
+        ballAccelerationX = new double[size];
+        ballAccelerationY = new double[size];
+
+        done = new boolean[size];
+        whoLost = new int[size];
+        leftScore = new int[size];
+        rightScore = new int[size];
+
+        leftHit = new boolean[size];
+        rightHit = new boolean[size];
+
+        this.random = random;
+
+        for (int i = 0; i < size; i++) {
+            reset(i);
+        }
+    }
+
+    public void randomizeBall(int slot) {
+        double randomX = width / 2 + random.nextDouble() * (width / 2 - GameBoard.BALL_DIAMETER - GameBoard.PADDLE_WIDTH);
+        double randomY = random.nextDouble() * (height - GameBoard.BALL_DIAMETER);
+
+        ballX[slot] = randomX;
+        ballY[slot] = randomY;
+
+        double velocityAngle = 2 * Math.PI / 3 + random.nextDouble() * (4 * Math.PI / 3 - 2 * Math.PI / 3);
+
+        ballVelocityX[slot] = GameBoard.BALL_SPEED * Math.cos(velocityAngle);
+        ballVelocityY[slot] = GameBoard.BALL_SPEED * Math.sin(velocityAngle);
+        ballAccelerationX[slot] = 0;
+        ballAccelerationY[slot] = 0;
+    }
+
+    private static Stepper loadVectorStepper() {
+        try {
+            // Loaded by name: it is compiled separately (see vector/) because it needs
+            // --add-modules jdk.incubator.vector, which the main sources must not
+            return (Stepper) Class.forName("GameBoardBatchVectorStepper").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public static boolean isVectorized() {
+        return VECTOR_STEPPER != null;
+    }
+
+    public void updateVectorized() {
+        if (VECTOR_STEPPER != null) {
+            VECTOR_STEPPER.update(this);
+        } else {
+            update();
+        }
+    }
+
+    public void update() {
+        update(0, size);
+    }
+
+    void update(int from, int to) {
+        final double paddleTop = height - GameBoard.PADDLE_HEIGHT + 1;
+        final double paddleWallFactor = -(1 - GameBoard.PADDLE_WALL_SPEED_LOSS);
+        final double ballBottom = height - GameBoard.BALL_DIAMETER;
+        final double ballRight = width - GameBoard.BALL_DIAMETER;
+        final double rightPaddleLine = width - GameBoard.PADDLE_WIDTH;
+
+        // The branches below mirror GameBoard.update() one for one, only
+        // applied to every slot of the batch in a single pass
+        for (int i = from; i < to; i++) {
+            leftHit[i] = false;
+            rightHit[i] = false;
+
+            if (done[i]) {
+                continue;
+            }
+
+            // Check if left paddle achieved maximum speed and reached a top/bottom wall
+            double leftVelocity = leftPaddleVelocityY[i];
+            double leftY = leftPaddleY[i];
+
+            if (leftVelocity >= GameBoard.PADDLE_MAX_SPEED) {
+                leftVelocity = GameBoard.PADDLE_MAX_SPEED;
+            } else if (leftVelocity <= -GameBoard.PADDLE_MAX_SPEED) {
+                leftVelocity = -GameBoard.PADDLE_MAX_SPEED;
+            }
+
+            if (leftY < 0) {
+                leftY = 0;
+                leftVelocity *= paddleWallFactor;
+            }
+
+            if (leftY > paddleTop) {
+                leftY = paddleTop;
+                leftVelocity *= paddleWallFactor;
+            }
+
+            leftVelocity += leftPaddleAccelerationY[i] * GameBoard.DT;
+            leftY += leftVelocity * GameBoard.DT;
+
+            leftPaddleVelocityY[i] = leftVelocity;
+            leftPaddleY[i] = leftY;
+
+            // Same for the right paddle
+            double rightVelocity = rightPaddleVelocityY[i];
+            double rightY = rightPaddleY[i];
+
+            if (rightVelocity >= GameBoard.PADDLE_MAX_SPEED) {
+                rightVelocity = GameBoard.PADDLE_MAX_SPEED;
+            } else if (rightVelocity <= -GameBoard.PADDLE_MAX_SPEED) {
+                rightVelocity = -GameBoard.PADDLE_MAX_SPEED;
+            }
+
+            if (rightY < 0) {
+                rightY = 0;
+                rightVelocity *= paddleWallFactor;
+            }
+
+            if (rightY > paddleTop) {
+                rightY = paddleTop;
+                rightVelocity *= paddleWallFactor;
+            }
+
+            rightVelocity += rightPaddleAccelerationY[i] * GameBoard.DT;
+            rightY += rightVelocity * GameBoard.DT;
+
+            rightPaddleVelocityY[i] = rightVelocity;
+            rightPaddleY[i] = rightY;
+
+            double x = ballX[i];
+            double y = ballY[i];
+            double velocityX = ballVelocityX[i];
+            double velocityY = ballVelocityY[i];
+
+            // Check if the ball hit the left paddle
+            if (x < GameBoard.PADDLE_WIDTH) {
+                if (!leftPaddle || (y + GameBoard.BALL_DIAMETER >= leftY && y <= leftY + GameBoard.PADDLE_HEIGHT)) {
+                    velocityX = -velocityX;
+                    leftHit[i] = true;
+                } else {
+                    ballVelocityX[i] = velocityX;
+                    done[i] = true;
+                    whoLost[i] = GameBoard.LEFT_LOST;
+
+                    if (rightPaddle) {
+                        rightScore[i]++;
+                    }
+
+                    continue;
+                }
+            }
+
+            // Check if the ball hit the right paddle
+            if (x + GameBoard.BALL_DIAMETER > rightPaddleLine) {
+                if (!rightPaddle || (y + GameBoard.BALL_DIAMETER >= rightY && y <= rightY + GameBoard.PADDLE_HEIGHT)) {
+                    velocityX = -velocityX;
+                    rightHit[i] = true;
+                } else {
+                    ballVelocityX[i] = velocityX;
+                    done[i] = true;
+                    whoLost[i] = GameBoard.RIGHT_LOST;
+
+                    if (leftPaddle) {
+                        leftScore[i]++;
+                    }
+
+                    continue;
+                }
+            }
+
+            // Check if the ball hit a top/bottom wall
+            if (y <= 0 || y >= ballBottom) {
+                velocityY = -velocityY;
+            }
+
+            // Check if the ball hit a left/right wall
+            if (x <= 0 || x >= ballRight) {
+                velocityX = -velocityX;
+            }
+
+            // Update the ball velocity and position
+            velocityX += ballAccelerationX[i] * GameBoard.DT;
+            velocityY += ballAccelerationY[i] * GameBoard.DT;
+
+            ballVelocityX[i] = velocityX;
+            ballVelocityY[i] = velocityY;
+            ballX[i] = x + velocityX * GameBoard.DT;
+            ballY[i] = y + velocityY * GameBoard.DT;
+        }
+    }
+
+    public void reset(int slot) {
+        leftPaddleY[slot] = (height - GameBoard.PADDLE_HEIGHT) / 2;
+        leftPaddleVelocityY[slot] = 0;
+        leftPaddleAccelerationY[slot] = 0;
+
+        rightPaddleY[slot] = (height - GameBoard.PADDLE_HEIGHT) / 2;
+        rightPaddleVelocityY[slot] = 0;
+        rightPaddleAccelerationY[slot] = 0;
+
+        randomizeBall(slot);
+
+        done[slot] = false;
+        whoLost[slot] = GameBoard.NONE_LOST;
+        leftHit[slot] = false;
+        rightHit[slot] = false;
+    }
+
+    public void resetDone() {
+        for (int i = 0; i < size; i++) {
+            if (done[i]) {
+                reset(i);
+            }
+        }
+    }
+
+    public void load(int slot, GameBoard board) {
+        leftPaddleY[slot] = board.getLeftPaddleY();
+        leftPaddleVelocityY[slot] = board.getLeftPaddleVelocityY();
+        leftPaddleAccelerationY[slot] = board.getLeftPaddleAccelerationY();
+
+        rightPaddleY[slot] = board.getRightPaddleY();
+        rightPaddleVelocityY[slot] = board.getRightPaddleVelocityY();
+        rightPaddleAccelerationY[slot] = board.getRightPaddleAccelerationY();
+
+        ballX[slot] = board.getBallPosition().x;
+        ballY[slot] = board.getBallPosition().y;
+        ballVelocityX[slot] = board.getBallVelocity().x;
+        ballVelocityY[slot] = board.getBallVelocity().y;
+        ballAccelerationX[slot] = 0;
+        ballAccelerationY[slot] = 0;
+
+        done[slot] = board.isDone();
+        whoLost[slot] = board.getWhoLost();
+        leftScore[slot] = board.getLeftScore();
+        rightScore[slot] = board.getRightScore();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public boolean hasLeftPaddle() {
+        return leftPaddle;
+    }
+
+    public boolean hasRightPaddle() {
+        return rightPaddle;
+    }
+
+    public double getLeftPaddleY(int slot) {
+        return leftPaddleY[slot];
+    }
+
+    public double getRightPaddleY(int slot) {
+        return rightPaddleY[slot];
+    }
+
+    public double getLeftPaddleVelocityY(int slot) {
+        return leftPaddleVelocityY[slot];
+    }
+
+    public double getRightPaddleVelocityY(int slot) {
+        return rightPaddleVelocityY[slot];
+    }
+
+    public double getLeftPaddleAccelerationY(int slot) {
+        return leftPaddleAccelerationY[slot];
+    }
+
+    public double getRightPaddleAccelerationY(int slot) {
+        return rightPaddleAccelerationY[slot];
+    }
+
+    public void setLeftPaddleAccelerationY(int slot, double leftPaddleAccelerationY) {
+        this.leftPaddleAccelerationY[slot] = leftPaddleAccelerationY;
+    }
+
+    public void setRightPaddleAccelerationY(int slot, double rightPaddleAccelerationY) {
+        this.rightPaddleAccelerationY[slot] = rightPaddleAccelerationY;
+    }
+
+    public double getBallX(int slot) {
+        return ballX[slot];
+    }
+
+    public double getBallY(int slot) {
+        return ballY[slot];
+    }
+
+    public double getBallVelocityX(int slot) {
+        return ballVelocityX[slot];
+    }
+
+    public double getBallVelocityY(int slot) {
+        return ballVelocityY[slot];
+    }
+
+    public boolean isLeftHit(int slot) {
+        return leftHit[slot];
+    }
+
+    public boolean isRightHit(int slot) {
+        return rightHit[slot];
+    }
+
+    public boolean isDone(int slot) {
+        return done[slot];
+    }
+
+    public void setDone(int slot, boolean done) {
+        this.done[slot] = done;
+    }
+
+    public int getWhoLost(int slot) {
+        return whoLost[slot];
+    }
+
+    public int getLeftScore(int slot) {
+        return leftScore[slot];
+    }
+
+    public int getRightScore(int slot) {
+        return rightScore[slot];
+    }
+}
@@ -0,0 +1,374 @@
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public class GameBoardBenchmark {
+
+    private static final double WIDTH = 300;
+    private static final double HEIGHT = 200;
+
+    // Unprinted rounds before the measured one. One round of 1024 boards x 500 steps calls the
+    // batch's update() only 500 times, which leaves it short of C2 when the table is printed
+    private static final int WARMUP_ROUNDS = 5;
+
+    // Largest drift allowed between jumpUntilEvent() and update() on any position or velocity
+    private static final double JUMP_TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: GameBoardBenchmark <numBoards> <stepsPerBoard>");
+            System.exit(1);
+        }
+
+        int numBoards = Integer.parseInt(args[0]);
+        int steps = Integer.parseInt(args[1]);
+
+        // The fast-forward path must land on exactly the same states as the per-frame loop
+        int mismatches = verifyFastForward(2000);
+        System.out.println("Fast-forward equivalence: " + mismatches + " mismatches in 2000 episodes");
+
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+
+        // The closed-form jump only has to stay within a tolerance, with the same events and outcome
+        mismatches = verifyJump(2000);
+        System.out.println("Jump equivalence: " + mismatches + " episodes off by more than " + JUMP_TOLERANCE + " in 2000");
+
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+
+        // And the fixed-point engine must follow the same rules as GameBoard
+        mismatches = verifyFixedPoint(2000);
+        System.out.println("Fixed-point equivalence: " + mismatches + " mismatches in 2000 episodes");
+
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+
+        if (GameBoardBatch.isVectorized()) {
+            // Same for the SIMD stepper against the scalar batch loop
+            mismatches = verifyVector(1024, 5000);
+            System.out.println("Vector equivalence: " + mismatches + " mismatching steps in 5000");
+
+            if (mismatches > 0) {
+                System.exit(1);
+            }
+        } else {
+            System.out.println("Vector stepper not loaded (see vector/GameBoardBatchVectorStepper.java), skipping its check");
+        }
+
+        // Everything runs on this thread, so these are steps/sec per core
+
+        System.out.printf("%-12s %-10s %-10s %-14s\n", "Engine", "Boards", "Steps", "Steps/sec");
+
+        // Only the last round is measured, with a warm JIT
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean print = round == WARMUP_ROUNDS;
+
+            report(print, "GameBoard", numBoards, steps, benchmarkGameBoard(numBoards, steps));
+            report(print, "Batch", numBoards, steps, benchmarkBatch(numBoards, steps));
+            report(print, "FastForward", numBoards, steps, benchmarkFastForward(numBoards, steps, true));
+            report(print, "Jump", numBoards, steps, benchmarkFastForward(numBoards, steps, false));
+            report(print, "FixedPoint", numBoards, steps, benchmarkFixedPoint(numBoards, steps));
+        }
+    }
+
+    private static void report(boolean print, String engine, int numBoards, int steps, long nanos) {
+        if (print) {
+            double stepsPerSecond = (double) numBoards * steps / (nanos / 1e9);
+            System.out.printf("%-12s %-10d %-10d %-14.0f\n", engine, numBoards, steps, stepsPerSecond);
+        }
+    }
+
+    private static long benchmarkGameBoard(int numBoards, int steps) {
+        GameBoard[] boards = new GameBoard[numBoards];
+
+        for (int i = 0; i < numBoards; i++) {
+            boards[i] = new GameBoard(WIDTH, HEIGHT, true, false);
+        }
+
+        long start = System.nanoTime();
+
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < numBoards; i++) {
+                boards[i].setLeftPaddleAccelerationY(action(i, step));
+                boards[i].update();
+
+                if (boards[i].isDone()) {
+                    boards[i].reset();
+                }
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long benchmarkBatch(int numBoards, int steps) {
+        GameBoardBatch batch = new GameBoardBatch(numBoards, WIDTH, HEIGHT, true, false);
+
+        long start = System.nanoTime();
+
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < numBoards; i++) {
+                batch.setLeftPaddleAccelerationY(i, action(i, step));
+            }
+
+            batch.update();
+            batch.resetDone();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long benchmarkFixedPoint(int numBoards, int steps) {
+        FixedPointGameBoard[] boards = new FixedPointGameBoard[numBoards];
+
+        for (int i = 0; i < numBoards; i++) {
+            boards[i] = new FixedPointGameBoard(WIDTH, HEIGHT, true, false);
+        }
+
+        long start = System.nanoTime();
+
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < numBoards; i++) {
+                boards[i].setLeftPaddleAccelerationY(action(i, step));
+                boards[i].update();
+
+                if (boards[i].isDone()) {
+                    boards[i].reset();
+                }
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long benchmarkFastForward(int numBoards, int steps, boolean exact) {
+        GameBoard[] boards = new GameBoard[numBoards];
+
+        for (int i = 0; i < numBoards; i++) {
+            boards[i] = new GameBoard(WIDTH, HEIGHT, true, false);
+        }
+
+        long start = System.nanoTime();
+
+        // Controller only acts at events, so every board jumps from one event to the next
+        for (int i = 0; i < numBoards; i++) {
+            int step = 0;
+
+            while (step < steps) {
+                boards[i].setLeftPaddleAccelerationY(action(i, step));
+                step += exact ? boards[i].advanceUntilEvent(steps - step) : boards[i].jumpUntilEvent(steps - step);
+
+                if (boards[i].isDone()) {
+                    boards[i].reset();
+                }
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static int verifyFastForward(int numEpisodes) {
+        Random random = new Random(1);
+        double[] expected = new double[GameBoard.SNAPSHOT_SIZE];
+        double[] actual = new double[GameBoard.SNAPSHOT_SIZE];
+        int mismatches = 0;
+
+        for (int episode = 0; episode < numEpisodes; episode++) {
+            GameBoard stepped = new GameBoard(WIDTH, HEIGHT, true, episode % 2 == 0);
+            GameBoard jumped = new GameBoard(stepped);
+
+            while (!stepped.isDone()) {
+                double action = (random.nextInt(3) - 1) * 0.25;
+                stepped.setLeftPaddleAccelerationY(action);
+                jumped.setLeftPaddleAccelerationY(action);
+
+                int frames = jumped.advanceUntilEvent(1 + random.nextInt(200));
+
+                for (int i = 0; i < frames; i++) {
+                    stepped.update();
+                }
+
+                stepped.snapshotInto(expected);
+                jumped.snapshotInto(actual);
+
+                if (!Arrays.equals(expected, actual)) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    private static int verifyJump(int numEpisodes) {
+        Random random = new Random(1);
+        double[] expected = new double[GameBoard.SNAPSHOT_SIZE];
+        double[] actual = new double[GameBoard.SNAPSHOT_SIZE];
+        int mismatches = 0;
+
+        for (int episode = 0; episode < numEpisodes; episode++) {
+            GameBoard stepped = new GameBoard(WIDTH, HEIGHT, true, episode % 2 == 0);
+            GameBoard jumped = new GameBoard(stepped);
+
+            while (!stepped.isDone()) {
+                double action = (random.nextInt(3) - 1) * 0.25;
+                stepped.setLeftPaddleAccelerationY(action);
+                jumped.setLeftPaddleAccelerationY(action);
+
+                int frames = jumped.jumpUntilEvent(1 + random.nextInt(200));
+
+                for (int i = 0; i < frames; i++) {
+                    stepped.update();
+                }
+
+                stepped.snapshotInto(expected);
+                jumped.snapshotInto(actual);
+
+                // Done, who lost and the scores are in the snapshot too, so those have to match exactly
+                if (!withinTolerance(expected, actual)) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    private static boolean withinTolerance(double[] a, double[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (Math.abs(a[i] - b[i]) > JUMP_TOLERANCE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int verifyFixedPoint(int numEpisodes) {
+        // Started from a state the fixed-point board holds exactly, GameBoard's doubles stay on the
+        // same 1/65536 grid (DT is 1 and every constant is a small dyadic number), so the two must
+        // agree exactly at every step, hits included
+        Random random = new Random(1);
+        double[] expected = new double[GameBoard.SNAPSHOT_SIZE];
+        double[] actual = new double[GameBoard.SNAPSHOT_SIZE];
+        boolean[] hits = new boolean[2];
+        int mismatches = 0;
+
+        for (int episode = 0; episode < numEpisodes; episode++) {
+            boolean rightPaddle = episode % 2 == 0;
+            FixedPointGameBoard fixed = new FixedPointGameBoard(WIDTH, HEIGHT, true, rightPaddle, new SplittableRandom(episode));
+            GameBoard board = new GameBoard(WIDTH, HEIGHT, true, rightPaddle, new SplittableRandom(episode));
+
+            board.addGameBoardListener((GameBoard b, boolean leftHit, boolean rightHit) -> {
+                hits[0] = leftHit;
+                hits[1] = rightHit;
+            });
+
+            snapshotInto(fixed, actual);
+            board.restoreFrom(actual);
+
+            while (!board.isDone()) {
+                double leftAction = (random.nextInt(3) - 1) * 0.25;
+                double rightAction = (random.nextInt(3) - 1) * 0.25;
+
+                board.setLeftPaddleAccelerationY(leftAction);
+                fixed.setLeftPaddleAccelerationY(leftAction);
+                board.setRightPaddleAccelerationY(rightAction);
+                fixed.setRightPaddleAccelerationY(rightAction);
+
+                board.update();
+                fixed.update();
+
+                board.snapshotInto(expected);
+                snapshotInto(fixed, actual);
+
+                if (!sameValues(expected, actual) || hits[0] != fixed.isLeftHit() || hits[1] != fixed.isRightHit()) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    private static void snapshotInto(FixedPointGameBoard board, double[] snapshot) {
+        // Same layout as GameBoard.snapshotInto(), the ball never accelerates
+        snapshot[0] = board.getLeftPaddleY();
+        snapshot[1] = board.getLeftPaddleVelocityY();
+        snapshot[2] = board.getLeftPaddleAccelerationY();
+        snapshot[3] = board.getRightPaddleY();
+        snapshot[4] = board.getRightPaddleVelocityY();
+        snapshot[5] = board.getRightPaddleAccelerationY();
+        snapshot[6] = board.getBallPosition().x;
+        snapshot[7] = board.getBallPosition().y;
+        snapshot[8] = board.getBallVelocity().x;
+        snapshot[9] = board.getBallVelocity().y;
+        snapshot[10] = 0;
+        snapshot[11] = 0;
+        snapshot[12] = board.isDone() ? 1 : 0;
+        snapshot[13] = board.getWhoLost();
+        snapshot[14] = board.getLeftScore();
+        snapshot[15] = board.getRightScore();
+    }
+
+    private static boolean sameValues(double[] a, double[] b) {
+        // == rather than Arrays.equals(): a paddle stopped by a wall is -0.0 in doubles and 0 in fixed point
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int verifyVector(int numBoards, int steps) {
+        GameBoardBatch scalar = new GameBoardBatch(numBoards, WIDTH, HEIGHT, true, true, new SplittableRandom(1));
+        GameBoardBatch vector = new GameBoardBatch(numBoards, WIDTH, HEIGHT, true, true, new SplittableRandom(1));
+        int mismatches = 0;
+
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < numBoards; i++) {
+                scalar.setLeftPaddleAccelerationY(i, action(i, step));
+                vector.setLeftPaddleAccelerationY(i, action(i, step));
+                scalar.setRightPaddleAccelerationY(i, action(i + 1, step));
+                vector.setRightPaddleAccelerationY(i, action(i + 1, step));
+            }
+
+            scalar.update();
+            vector.updateVectorized();
+
+            if (!Arrays.equals(scalar.ballX, vector.ballX) || !Arrays.equals(scalar.ballY, vector.ballY)
+                    || !Arrays.equals(scalar.ballVelocityX, vector.ballVelocityX) || !Arrays.equals(scalar.ballVelocityY, vector.ballVelocityY)
+                    || !Arrays.equals(scalar.leftPaddleY, vector.leftPaddleY) || !Arrays.equals(scalar.leftPaddleVelocityY, vector.leftPaddleVelocityY)
+                    || !Arrays.equals(scalar.rightPaddleY, vector.rightPaddleY) || !Arrays.equals(scalar.rightPaddleVelocityY, vector.rightPaddleVelocityY)
+                    || !Arrays.equals(scalar.done, vector.done) || !Arrays.equals(scalar.whoLost, vector.whoLost)
+                    || !Arrays.equals(scalar.leftScore, vector.leftScore) || !Arrays.equals(scalar.rightScore, vector.rightScore)
+                    || !Arrays.equals(scalar.leftHit, vector.leftHit) || !Arrays.equals(scalar.rightHit, vector.rightHit)) {
+                mismatches++;
+            }
+
+            scalar.resetDone();
+            vector.resetDone();
+        }
+
+        return mismatches;
+    }
+
+    private static double action(int board, int step) {
+        // Cheap deterministic paddle input so both engines do the same amount of work
+        return ((board + step / 16) % 3 - 1) * 0.25;
+    }
+}
@@ -0,0 +1,199 @@
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/**
+ *
+ * @author Andres
+ */
+public class InferenceBenchmark {
+
+    // Largest difference from Encog's output that still counts as identical
+    private static final double TOLERANCE = 1e-12;
+
+    // States per computeBatch() call, as EncogQFunction evaluates them
+    private static final int BATCH_SIZE = 64;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: InferenceBenchmark <readNNFile | none> <numEvaluations>");
+            System.exit(1);
+        }
+
+        SplittableRandom random = new SplittableRandom(1);
+        BasicNetwork nn = args[0].equals("none") ? EncogQFunction.createQNetwork(random) : (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(args[0]));
+        int numEvaluations = Integer.parseInt(args[1]);
+
+        CompiledNetwork compiled = CompiledNetwork.compile(nn);
+        QuantizedNetwork float32 = QuantizedNetwork.quantize(nn, QuantizedNetwork.Precision.FLOAT32);
+        QuantizedNetwork int8 = QuantizedNetwork.quantize(nn, QuantizedNetwork.Precision.INT8);
+
+        // Random states in the ranges the board actually produces
+        double[][] inputs = new double[4096][nn.getInputCount()];
+
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextDouble(-300, 300);
+            }
+        }
+
+        // Row after row for computeBatch()
+        double[] packedInputs = new double[inputs.length * nn.getInputCount()];
+
+        for (int i = 0; i < inputs.length; i++) {
+            System.arraycopy(inputs[i], 0, packedInputs, i * nn.getInputCount(), nn.getInputCount());
+        }
+
+        double maxDifference = verify(nn, compiled, inputs);
+        System.out.println("Max difference from Encog: " + maxDifference + " over " + inputs.length + " inputs");
+
+        if (maxDifference > TOLERANCE) {
+            System.exit(1);
+        }
+
+        System.out.printf("%-26s %-14s %-14s %-14s\n", "Engine", "Evaluations", "Evals/sec", "Bytes/eval");
+
+        // Run everything twice so the second round is measured with a warm JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            report(print, "Encog compute(MLData)", numEvaluations, () -> benchmarkEncogData(nn, inputs, numEvaluations));
+            report(print, "Encog compute(double[])", numEvaluations, () -> benchmarkEncogArray(nn, inputs, numEvaluations));
+            report(print, "CompiledNetwork", numEvaluations, () -> benchmarkCompiled(compiled, inputs, numEvaluations));
+            report(print, "CompiledNetwork batch", numEvaluations, () -> benchmarkCompiledBatch(compiled, packedInputs, inputs.length, numEvaluations));
+            report(print, "QuantizedNetwork float32", numEvaluations, () -> benchmarkQuantized(float32, inputs, numEvaluations));
+            report(print, "QuantizedNetwork int8", numEvaluations, () -> benchmarkQuantized(int8, inputs, numEvaluations));
+        }
+    }
+
+    private static double verify(BasicNetwork nn, CompiledNetwork compiled, double[][] inputs) {
+        double[] expected = new double[nn.getOutputCount()];
+        double[] actual = new double[nn.getOutputCount()];
+        double[] scratch = compiled.createScratch();
+        double maxDifference = 0;
+
+        for (double[] input : inputs) {
+            nn.compute(input, expected);
+            compiled.compute(input, actual, scratch);
+
+            for (int i = 0; i < expected.length; i++) {
+                maxDifference = Math.max(maxDifference, Math.abs(expected[i] - actual[i]));
+            }
+        }
+
+        return maxDifference;
+    }
+
+    private static void report(boolean print, String engine, int numEvaluations, LongSupplier benchmark) {
+        // Heap allocated by this thread while the benchmark runs, the garbage the engine leaves behind
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long nanos = benchmark.getAsLong();
+        bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+        if (print) {
+            System.out.printf("%-26s %-14d %-14.0f %-14.1f\n", engine, numEvaluations, numEvaluations / (nanos / 1e9), (double) bytes / numEvaluations);
+        }
+    }
+
+    private static long benchmarkEncogData(BasicNetwork nn, double[][] inputs, int numEvaluations) {
+        double sink = 0;
+        long start = System.nanoTime();
+
+        // What the controller used to do: a new BasicMLData in and a new MLData out per evaluation
+        for (int i = 0; i < numEvaluations; i++) {
+            sink += nn.compute(new BasicMLData(inputs[i % inputs.length])).getData(0);
+        }
+
+        long nanos = System.nanoTime() - start;
+        consume(sink);
+
+        return nanos;
+    }
+
+    private static long benchmarkEncogArray(BasicNetwork nn, double[][] inputs, int numEvaluations) {
+        double[] output = new double[nn.getOutputCount()];
+        double sink = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numEvaluations; i++) {
+            nn.compute(inputs[i % inputs.length], output);
+            sink += output[0];
+        }
+
+        long nanos = System.nanoTime() - start;
+        consume(sink);
+
+        return nanos;
+    }
+
+    private static long benchmarkCompiled(CompiledNetwork compiled, double[][] inputs, int numEvaluations) {
+        double[] output = new double[compiled.getOutputCount()];
+        double[] scratch = compiled.createScratch();
+        double sink = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numEvaluations; i++) {
+            compiled.compute(inputs[i % inputs.length], output, scratch);
+            sink += output[0];
+        }
+
+        long nanos = System.nanoTime() - start;
+        consume(sink);
+
+        return nanos;
+    }
+
+    private static long benchmarkCompiledBatch(CompiledNetwork compiled, double[] packed, int numInputs, int numEvaluations) {
+        // The same inputs in blocks of BATCH_SIZE rows, as the trainer evaluates its targets
+        double[] block = new double[BATCH_SIZE * compiled.getInputCount()];
+        double[] outputs = new double[BATCH_SIZE * compiled.getOutputCount()];
+        double[] scratch = compiled.createBatchScratch(BATCH_SIZE);
+        double sink = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numEvaluations; i += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, numEvaluations - i);
+            int first = i % numInputs;
+
+            // numInputs is a multiple of BATCH_SIZE, so a block never wraps around
+            System.arraycopy(packed, first * compiled.getInputCount(), block, 0, count * compiled.getInputCount());
+            compiled.computeBatch(block, outputs, count, scratch);
+            sink += outputs[0];
+        }
+
+        long nanos = System.nanoTime() - start;
+        consume(sink);
+
+        return nanos;
+    }
+
+    private static long benchmarkQuantized(QuantizedNetwork quantized, double[][] inputs, int numEvaluations) {
+        double[] output = new double[quantized.getOutputCount()];
+        QuantizedNetwork.Scratch scratch = quantized.createScratch();
+        double sink = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numEvaluations; i++) {
+            quantized.compute(inputs[i % inputs.length], output, scratch);
+            sink += output[0];
+        }
+
+        long nanos = System.nanoTime() - start;
+        consume(sink);
+
+        return nanos;
+    }
+
+    private static void consume(double sink) {
+        // Keeps the JIT from dropping the benchmark loops as dead code
+        if (sink == 42.4242) {
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Andres
+ */
+public final class LongDoubleArrayMap {
+
+    private static final double MAX_LOAD = 0.5;
+
+    // Every key owns a row of valueSize doubles, stored back to back in one array. Open addressing
+    // with linear probing, so nothing is boxed and a lookup touches at most a few adjacent slots
+    private final int valueSize;
+
+    private long[] keys;
+    private boolean[] used;
+    private double[] values;
+
+    private int size;
+    private int mask;
+
+    public LongDoubleArrayMap(int valueSize, int initialCapacity) {
+        if (valueSize < 1) {
+            throw new IllegalArgumentException("Value size must be at least 1");
+        }
+
+        this.valueSize = valueSize;
+
+        allocate(Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        values = new double[capacity * valueSize];
+        mask = capacity - 1;
+    }
+
+    public int indexOf(long key) {
+        // Offset of the key's row in getValues(), or -1 when it isn't in the map
+        for (int slot = slotOf(key); used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot * valueSize;
+            }
+        }
+
+        return -1;
+    }
+
+    public int insert(long key) {
+        // Offset of the key's row in getValues(), a zero row is added for a new key. Growing
+        // replaces the values array, so getValues() has to be called again after this
+        int slot = slotOf(key);
+
+        for (; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot * valueSize;
+            }
+        }
+
+        if (size + 1 > MAX_LOAD * keys.length) {
+            grow();
+            return insert(key);
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        size++;
+
+        return slot * valueSize;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        double[] oldValues = values;
+
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotOf(oldKeys[i]);
+
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                System.arraycopy(oldValues, i * valueSize, values, slot * valueSize, valueSize);
+            }
+        }
+    }
+
+    private int slotOf(long key) {
+        // Fibonacci hashing, the top bits of the product are the well mixed ones
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length))) & mask;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long getMemoryBytes() {
+        // Array payloads only: a key, a used flag and a row of values per slot
+        return (long) keys.length * (Long.BYTES + 1 + valueSize * Double.BYTES);
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+}
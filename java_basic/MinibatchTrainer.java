@@ -0,0 +1,105 @@
+
+import java.util.Arrays;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class MinibatchTrainer {
+
+    public enum Optimizer {
+        ADAM, RMSPROP
+    }
+
+    public static final double DEFAULT_LEARNING_RATE = 0.001;
+
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double RMSPROP_DECAY = 0.9;
+    private static final double EPSILON = 1e-8;
+
+    private final Optimizer optimizer;
+    private final double learningRate;
+
+    // The network's own flat weights, updated in place
+    private final double[] weights;
+    private final NetworkGradient gradient;
+    private final int outputCount;
+
+    // Per-weight optimizer state, kept for as long as the trainer lives
+    private final double[] gradients;
+    private final double[] firstMoments;
+    private final double[] secondMoments;
+    private long numSteps;
+
+    private final MLDataPair pair;
+
+    public MinibatchTrainer(BasicNetwork network, Optimizer optimizer, double learningRate) {
+        FlatNetwork flat = network.getFlat();
+
+        this.optimizer = optimizer;
+        this.learningRate = learningRate;
+
+        weights = flat.getWeights();
+        gradient = new NetworkGradient(flat);
+        outputCount = flat.getOutputCount();
+
+        gradients = new double[weights.length];
+        firstMoments = new double[weights.length];
+        secondMoments = new double[weights.length];
+
+        pair = BasicMLDataPair.createPair(gradient.getInputCount(), outputCount);
+    }
+
+    public double step(MLDataSet batch) {
+        // One optimizer step on the mean gradient of the batch, returns its error before the step.
+        // The cost depends on the batch size only, however much data the batch was drawn from
+        int count = batch.size();
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        Arrays.fill(gradients, 0);
+        double error = 0;
+
+        for (int i = 0; i < count; i++) {
+            batch.getRecord(i, pair);
+            error += pair.getSignificance() * gradient.accumulate(pair.getInputArray(), pair.getIdealArray(), pair.getSignificance() / count, gradients);
+        }
+
+        numSteps++;
+
+        if (optimizer == Optimizer.ADAM) {
+            double correction1 = 1 - Math.pow(BETA1, numSteps);
+            double correction2 = 1 - Math.pow(BETA2, numSteps);
+
+            for (int w = 0; w < weights.length; w++) {
+                firstMoments[w] = BETA1 * firstMoments[w] + (1 - BETA1) * gradients[w];
+                secondMoments[w] = BETA2 * secondMoments[w] + (1 - BETA2) * gradients[w] * gradients[w];
+                weights[w] -= learningRate * (firstMoments[w] / correction1) / (Math.sqrt(secondMoments[w] / correction2) + EPSILON);
+            }
+        } else {
+            for (int w = 0; w < weights.length; w++) {
+                secondMoments[w] = RMSPROP_DECAY * secondMoments[w] + (1 - RMSPROP_DECAY) * gradients[w] * gradients[w];
+                weights[w] -= learningRate * gradients[w] / (Math.sqrt(secondMoments[w]) + EPSILON);
+            }
+        }
+
+        // Same measure as Encog's training error: mean squared error per output
+        return error / (count * outputCount);
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public long getNumSteps() {
+        return numSteps;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ * @author Andres
+ */
+public final class NStepQFunction implements QFunction {
+
+    // Hands transitions on as n-step returns through its own window, everything else goes straight
+    // to the stage behind it, which has to bootstrap with getBootstrapDiscount() (gamma^n). Every
+    // actor needs its own instance, the stage behind can be shared
+    private final QFunction next;
+    private final NStepReturns returns;
+    private final NStepReturns.Sink sink;
+
+    public NStepQFunction(QFunction next, int steps, double gamma) {
+        this.next = next;
+
+        returns = new NStepReturns(steps, gamma, QPaddleController.STATE_SIZE);
+        sink = next::addTransition;
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        next.evaluate(states, actions, out, count);
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        next.computeQValues(state, output);
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        return next.train(batch);
+    }
+
+    @Override
+    public int getVersion() {
+        return next.getVersion();
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        returns.add(state, action, reward, nextState, done, sink);
+    }
+
+    @Override
+    public double commit() {
+        return next.commit();
+    }
+
+    @Override
+    public void startEpisode() {
+        returns.clear();
+        next.startEpisode();
+    }
+
+    public int getSteps() {
+        return returns.getSteps();
+    }
+
+    public double getBootstrapDiscount() {
+        return returns.getBootstrapDiscount();
+    }
+}
@@ -0,0 +1,154 @@
+
+import org.encog.neural.flat.FlatNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class NetworkGradient {
+
+    // The network's own flat weights, read on every pass so updates made in place are picked up.
+    // The layout is the one CompiledNetwork describes, the backward pass walks it from the output
+    // layer (0) towards the input
+    private final double[] weights;
+    private final int[] layerCounts;
+    private final int[] layerFeedCounts;
+    private final int[] layerIndex;
+    private final int[] weightIndex;
+    private final double[] biasActivation;
+    private final int[] activations;
+    private final int inputCount;
+    private final int outputCount;
+
+    // Scratch buffers: weighted sums and outputs of every neuron, and the error flowing back into it.
+    // They make an instance single-threaded, each worker needs its own
+    private final double[] layerSums;
+    private final double[] layerOutput;
+    private final double[] layerDeltas;
+
+    public NetworkGradient(FlatNetwork flat) {
+        weights = flat.getWeights();
+        layerCounts = flat.getLayerCounts();
+        layerFeedCounts = flat.getLayerFeedCounts();
+        layerIndex = flat.getLayerIndex();
+        weightIndex = flat.getWeightIndex();
+        biasActivation = flat.getBiasActivation();
+        activations = CompiledNetwork.compileActivations(flat);
+        inputCount = flat.getInputCount();
+        outputCount = flat.getOutputCount();
+
+        layerSums = new double[flat.getNeuronCount()];
+        layerOutput = new double[flat.getNeuronCount()];
+        layerDeltas = new double[flat.getNeuronCount()];
+    }
+
+    public double accumulate(double[] input, double[] ideal, double scale, double[] gradients) {
+        // Adds the gradient of scale * (actual - ideal)^2 / 2 to gradients, returns (actual - ideal)^2
+        final int last = layerIndex.length - 1;
+
+        forward(input);
+
+        double error = 0;
+
+        for (int x = 0; x < outputCount; x++) {
+            double difference = layerOutput[x] - ideal[x];
+
+            error += difference * difference;
+            layerDeltas[x] = scale * difference * derivative(0, layerSums[x]);
+        }
+
+        for (int layer = 1; layer <= last; layer++) {
+            final int inputIndex = layerIndex[layer];
+            final int outputIndex = layerIndex[layer - 1];
+            final int inputSize = layerCounts[layer];
+            final int outputSize = layerFeedCounts[layer - 1];
+
+            int index = weightIndex[layer - 1];
+
+            for (int y = 0; y < inputSize; y++) {
+                layerDeltas[inputIndex + y] = 0;
+            }
+
+            // Gradient of every weight into layer - 1, and the error pushed back into layer
+            for (int x = 0; x < outputSize; x++) {
+                double delta = layerDeltas[outputIndex + x];
+
+                for (int y = 0; y < inputSize; y++) {
+                    gradients[index] += delta * layerOutput[inputIndex + y];
+                    layerDeltas[inputIndex + y] += delta * weights[index];
+                    index++;
+                }
+            }
+
+            // Bias neurons have no inputs, and the input layer's error goes nowhere
+            if (layer < last) {
+                for (int y = 0; y < layerFeedCounts[layer]; y++) {
+                    layerDeltas[inputIndex + y] *= derivative(layer, layerSums[inputIndex + y]);
+                }
+            }
+        }
+
+        return error;
+    }
+
+    private void forward(double[] input) {
+        // Same order as CompiledNetwork.compute(), but keeping every neuron's weighted sum
+        final int last = layerIndex.length - 1;
+
+        System.arraycopy(input, 0, layerOutput, layerIndex[last], inputCount);
+
+        for (int i = 0; i < layerIndex.length; i++) {
+            if (layerCounts[i] != layerFeedCounts[i]) {
+                layerOutput[layerIndex[i] + layerFeedCounts[i]] = biasActivation[i];
+            }
+        }
+
+        for (int layer = last; layer > 0; layer--) {
+            final int inputIndex = layerIndex[layer];
+            final int outputIndex = layerIndex[layer - 1];
+            final int limitX = outputIndex + layerFeedCounts[layer - 1];
+            final int limitY = inputIndex + layerCounts[layer];
+
+            int index = weightIndex[layer - 1];
+
+            for (int x = outputIndex; x < limitX; x++) {
+                double sum = 0;
+
+                for (int y = inputIndex; y < limitY; y++) {
+                    sum += weights[index++] * layerOutput[y];
+                }
+
+                layerSums[x] = sum;
+                layerOutput[x] = activate(layer - 1, sum);
+            }
+        }
+    }
+
+    private double activate(int layer, double sum) {
+        if (activations[layer] == CompiledNetwork.LOG) {
+            return sum >= 0 ? Math.log(1 + sum) : -Math.log(1 - sum);
+        }
+
+        return sum;
+    }
+
+    private double derivative(int layer, double sum) {
+        if (activations[layer] == CompiledNetwork.LOG) {
+            return sum >= 0 ? 1 / (1 + sum) : 1 / (1 - sum);
+        }
+
+        return 1;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    public int getWeightCount() {
+        return weights.length;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.function.Supplier;
+
+/**
+ *
+ * @author Andres
+ */
+public final class NormalizedQFunction implements QFunction {
+
+    // Scales every state by running mean and variance on its way into the backend, for evaluation
+    // and train() alike. The statistics are kept elsewhere (a QLearner updates them, an AsyncLearner
+    // publishes copies) so they are asked for on every call, null passes states through raw
+    private final QFunction backend;
+    private final Supplier<InputNormalizer> normalizer;
+
+    // Other statistics mean other Q-values, so they move the version on too
+    private InputNormalizer seenNormalizer;
+    private long seenCount;
+    private int normalizerChanges;
+
+    // Scratch buffers, only grown, so an instance must not be shared across threads
+    private double[] normalizedStates;
+    private QBatch normalizedBatch;
+    private final double[] stateInput;
+
+    public NormalizedQFunction(QFunction backend, InputNormalizer normalizer) {
+        // Fixed statistics, e.g. the ones saved next to a network
+        this(backend, () -> normalizer);
+    }
+
+    public NormalizedQFunction(QFunction backend, Supplier<InputNormalizer> normalizer) {
+        this.backend = backend;
+        this.normalizer = normalizer;
+
+        normalizedStates = new double[0];
+        stateInput = new double[QPaddleController.STATE_SIZE];
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        final int stateSize = QPaddleController.STATE_SIZE;
+        InputNormalizer current = normalizer.get();
+
+        if (current == null) {
+            backend.evaluate(states, actions, out, count);
+            return;
+        }
+
+        if (normalizedStates.length < count * stateSize) {
+            normalizedStates = new double[count * stateSize];
+        }
+
+        System.arraycopy(states, 0, normalizedStates, 0, count * stateSize);
+
+        for (int i = 0; i < count; i++) {
+            current.normalize(normalizedStates, i * stateSize);
+        }
+
+        backend.evaluate(normalizedStates, actions, out, count);
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        InputNormalizer current = normalizer.get();
+
+        if (current == null) {
+            backend.computeQValues(state, output);
+            return;
+        }
+
+        System.arraycopy(state, 0, stateInput, 0, QPaddleController.STATE_SIZE);
+        current.normalize(stateInput, 0);
+        backend.computeQValues(stateInput, output);
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        InputNormalizer current = normalizer.get();
+
+        if (current == null) {
+            return backend.train(batch);
+        }
+
+        if (normalizedBatch == null || normalizedBatch.getCapacity() < batch.size()) {
+            normalizedBatch = new QBatch(batch.getCapacity(), QPaddleController.STATE_SIZE);
+        }
+
+        normalizedBatch.clear();
+
+        for (int i = 0; i < batch.size(); i++) {
+            System.arraycopy(batch.getStates(), i * QPaddleController.STATE_SIZE, stateInput, 0, QPaddleController.STATE_SIZE);
+            current.normalize(stateInput, 0);
+            normalizedBatch.add(stateInput, batch.getActions()[i], batch.getTargets()[i]);
+        }
+
+        return backend.train(normalizedBatch);
+    }
+
+    @Override
+    public int getVersion() {
+        InputNormalizer current = normalizer.get();
+        long count = current != null ? current.getCount() : -1;
+
+        if (current != seenNormalizer || count != seenCount) {
+            seenNormalizer = current;
+            seenCount = count;
+            normalizerChanges++;
+        }
+
+        // Both only ever grow, so the sum moves whenever either does
+        return backend.getVersion() + normalizerChanges;
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        // Raw, whoever learns from it keeps its own statistics
+        backend.addTransition(state, action, reward, nextState, done);
+    }
+
+    @Override
+    public double commit() {
+        return backend.commit();
+    }
+
+    @Override
+    public void startEpisode() {
+        backend.startEpisode();
+    }
+
+    public InputNormalizer getNormalizer() {
+        return normalizer.get();
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ *
+ * @author Andres
+ */
+public interface QFunction {
+
+    // Batched over primitive arrays so an engine, a table or a remote service can serve many states
+    // per call. Row i of states is at [i * stateSize, (i + 1) * stateSize), out[i] becomes
+    // Q(row i, actions[i]), or with actions null out[i * numActions + a] gets every action's value
+    void evaluate(double[] states, int[] actions, double[] out, int count);
+
+    // Moves Q(state, action) of every row of the batch towards its target, returns the mean
+    // squared error before the move
+    double train(QBatch batch);
+
+    // Writes the Q-value of every action in the given state into qValues
+    default void computeQValues(double[] state, double[] qValues) {
+        evaluate(state, null, qValues, 1);
+    }
+
+    // Moves on whenever the Q-values may have changed (train(), commit(), new weights from elsewhere),
+    // so whatever remembers them, like CachedQFunction, knows when to forget
+    int getVersion();
+
+    // Everything the controller learns from: one decision's transition while training. A backend only
+    // evaluates and trains, turning transitions into updates is up to a stage wrapped around it:
+    // OneStepQFunction for any backend, ReplayQFunction or ActorQFunction for an Encog network, with
+    // NStepQFunction in front of either for n-step returns
+    default void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        throw new IllegalStateException("Cannot learn from transitions without a learning stage, see OneStepQFunction");
+    }
+
+    // End of a batch of episodes: learns from whatever is still pending and returns the mean
+    // squared error of the updates since the last call
+    default double commit() {
+        throw new IllegalStateException("Cannot learn from transitions without a learning stage, see OneStepQFunction");
+    }
+
+    // A new episode starts, so the next transition doesn't follow on from the last one
+    default void startEpisode() {
+    }
+}
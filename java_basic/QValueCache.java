@@ -0,0 +1,190 @@
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Andres
+ */
+public final class QValueCache {
+
+    public static final int WAYS = 8;
+
+    private static final int NUM_LOCKS = 64;
+
+    // Quantization step of every state feature, states that round to the same steps share an entry.
+    // A step of 0 keys the feature on its exact value
+    private final double[] resolution;
+    private final int numActions;
+
+    // Set-associative: a state hashes to one set of WAYS entries and is only ever looked for there.
+    // Each set evicts with its own CLOCK hand over the entries' referenced bits
+    private final int numSets;
+    private final int setShift;
+    private final long[] keys;
+    private final int[] versions;
+    private final boolean[] referenced;
+    private final double[] values;
+    private final int[] hands;
+
+    // Sets are striped over a fixed number of locks, so readers on different sets rarely wait
+    private final Object[] locks;
+
+    // Entries stamped with an older version are stale, so bumping it drops everything at once
+    private final AtomicInteger version;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public QValueCache(int capacity, int numActions, double[] resolution) {
+        if (capacity < WAYS) {
+            throw new IllegalArgumentException("Cache capacity must be at least " + WAYS);
+        }
+
+        this.resolution = resolution.clone();
+        this.numActions = numActions;
+
+        numSets = Integer.highestOneBit(capacity / WAYS);
+        setShift = 64 - Integer.numberOfTrailingZeros(numSets);
+
+        keys = new long[numSets * WAYS];
+        versions = new int[numSets * WAYS];
+        referenced = new boolean[numSets * WAYS];
+        values = new double[numSets * WAYS * numActions];
+        hands = new int[numSets];
+
+        locks = new Object[NUM_LOCKS];
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        // Entries start at version 0 and are never valid until written
+        version = new AtomicInteger(1);
+
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+    }
+
+    public static double[] defaultResolution() {
+        // Pixels for positions, tenths for the paddle velocity, the acceleration is always an action
+        // value and the ball velocity components move in small steps as its angle changes
+        return new double[]{1, 0.1, 0.25, 1, 1, 0.05, 0.05};
+    }
+
+    public int getVersion() {
+        return version.get();
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public boolean get(double[] state, int version, double[] qValues) {
+        // Fills qValues and returns true when the state was cached at this version
+        long key = keyOf(state);
+        int set = setOf(key);
+
+        synchronized (locks[set & (NUM_LOCKS - 1)]) {
+            for (int e = set * WAYS; e < (set + 1) * WAYS; e++) {
+                if (keys[e] == key && versions[e] == version) {
+                    System.arraycopy(values, e * numActions, qValues, 0, numActions);
+                    referenced[e] = true;
+                    hits.increment();
+
+                    return true;
+                }
+            }
+        }
+
+        misses.increment();
+        return false;
+    }
+
+    public void put(double[] state, int version, double[] qValues) {
+        // version is the one the values were computed under, see getVersion()
+        if (version != this.version.get()) {
+            return;
+        }
+
+        long key = keyOf(state);
+        int set = setOf(key);
+
+        synchronized (locks[set & (NUM_LOCKS - 1)]) {
+            int entry = -1;
+
+            // Another thread may have just added it, otherwise take a stale entry before evicting one
+            for (int e = set * WAYS; e < (set + 1) * WAYS; e++) {
+                if (keys[e] == key && versions[e] == version) {
+                    return;
+                } else if (versions[e] != version && entry < 0) {
+                    entry = e;
+                }
+            }
+
+            if (entry < 0) {
+                entry = nextVictim(set);
+                evictions.increment();
+            }
+
+            keys[entry] = key;
+            versions[entry] = version;
+            referenced[entry] = false;
+            System.arraycopy(qValues, 0, values, entry * numActions, numActions);
+        }
+    }
+
+    private int nextVictim(int set) {
+        // CLOCK: recently hit entries get a second chance, the first one without it goes
+        while (true) {
+            int e = set * WAYS + hands[set];
+            hands[set] = (hands[set] + 1) % WAYS;
+
+            if (!referenced[e]) {
+                return e;
+            }
+
+            referenced[e] = false;
+        }
+    }
+
+    private long keyOf(double[] state) {
+        long hash = 0;
+
+        for (int f = 0; f < resolution.length; f++) {
+            long step = resolution[f] > 0 ? Math.round(state[f] / resolution[f]) : Double.doubleToLongBits(state[f]);
+            hash = (hash + step) * 0x9E3779B97F4A7C15L;
+        }
+
+        return hash ^ (hash >>> 29);
+    }
+
+    private int setOf(long key) {
+        return numSets > 1 ? (int) (key >>> setShift) : 0;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long numHits = hits.sum();
+        long lookups = numHits + misses.sum();
+
+        return lookups > 0 ? (double) numHits / lookups : 0;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,177 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/**
+ *
+ * @author Andres
+ */
+public class QuantizationReport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            printUsage();
+        }
+
+        int numStates = 20000;
+        int numEpisodes = 75;
+        SplittableRandom random = new SplittableRandom();
+
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+
+            if (option.length != 2) {
+                printUsage();
+            } else if (option[0].equals("states")) {
+                numStates = Integer.parseInt(option[1]);
+            } else if (option[0].equals("episodes")) {
+                numEpisodes = Integer.parseInt(option[1]);
+            } else if (option[0].equals("seed")) {
+                random = new SplittableRandom(Long.parseLong(option[1]));
+            } else {
+                printUsage();
+            }
+        }
+
+        BasicNetwork nn = (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(args[0]));
+        GameBoard board = new GameBoard(300, 200, true, false, random.split());
+        double[][] states = collectStates(args[0], numStates, random.split());
+
+        CompiledNetwork reference = CompiledNetwork.compile(nn);
+        double[][] referenceQ = computeQValues(reference, null, states);
+
+        System.out.printf("%-10s %-13s %-18s %-16s %-18s\n", "Precision", "Weight Bytes", "Greedy Mismatch %", "Max Q Error", "Mean Miss Distance");
+
+        double[] testResults = PongUI.testQPaddleController(board, args[0], numEpisodes, 1, null, random.split());
+        System.out.printf("%-10s %-13d %-18.3f %-16.3e %-18.3f\n", "double", nn.getFlat().getWeights().length * Double.BYTES, 0.0, 0.0, testResults[5]);
+
+        for (QuantizedNetwork.Precision precision : QuantizedNetwork.Precision.values()) {
+            QuantizedNetwork quantized = QuantizedNetwork.quantize(nn, precision);
+            double[][] quantizedQ = computeQValues(null, quantized, states);
+
+            double maxError = 0;
+
+            for (int i = 0; i < states.length; i++) {
+                for (int a = 0; a < referenceQ[i].length; a++) {
+                    maxError = Math.max(maxError, Math.abs(quantizedQ[i][a] - referenceQ[i][a]));
+                }
+            }
+
+            testResults = PongUI.testQPaddleController(board, args[0], numEpisodes, 1, precision, random.split());
+            System.out.printf("%-10s %-13d %-18.3f %-16.3e %-18.3f\n", precision.name().toLowerCase(), quantized.getWeightBytes(), greedyMismatchPercent(referenceQ, quantizedQ), maxError, testResults[5]);
+        }
+
+        System.out.println();
+        System.out.println("Over " + states.length + " visited states and " + numEpisodes + " evaluation episodes");
+    }
+
+    private static double[][] collectStates(String nnFileName, int numStates, SplittableRandom random) throws IOException {
+        // The states the double precision network actually visits, with a little exploration
+        GameBoard board = new GameBoard(300, 200, true, false, random.split());
+        QPaddleController player = new QPaddleController(board, PaddleController.LEFT, 0.1, EncogQFunction.load(nnFileName), false, random.split());
+
+        double[][] states = new double[numStates][QPaddleController.STATE_SIZE];
+        int[] numRecorded = {0};
+
+        // Registered before the player so the state is recorded before it picks an action
+        board.addGameBoardListener((GameBoard b, boolean leftHit, boolean rightHit) -> {
+            if (numRecorded[0] < states.length) {
+                player.getStateInput(b, states[numRecorded[0]++]);
+            }
+        });
+        board.addGameBoardListener(player);
+
+        while (numRecorded[0] < states.length) {
+            board.update();
+
+            if (board.isDone()) {
+                board.reset();
+                player.startTrainingEpisode();
+            }
+        }
+
+        // As the network sees them
+        File normalizerFile = new File(nnFileName + ".norm");
+
+        if (normalizerFile.exists()) {
+            InputNormalizer normalizer = InputNormalizer.load(normalizerFile);
+
+            for (double[] state : states) {
+                normalizer.normalize(state, 0);
+            }
+        }
+
+        return states;
+    }
+
+    private static double greedyMismatchPercent(double[][] referenceQ, double[][] quantizedQ) {
+        // How often the quantized network would pick another action than the double one
+        int mismatches = 0;
+
+        for (int i = 0; i < referenceQ.length; i++) {
+            if (argMax(quantizedQ[i]) != argMax(referenceQ[i])) {
+                mismatches++;
+            }
+        }
+
+        return mismatches * 100.0 / referenceQ.length;
+    }
+
+    private static double[][] computeQValues(CompiledNetwork compiled, QuantizedNetwork quantized, double[][] states) {
+        // One row of Q-values over the valid actions per state, for either kind of network
+        int inputCount = compiled != null ? compiled.getInputCount() : quantized.getInputCount();
+        int outputCount = compiled != null ? compiled.getOutputCount() : quantized.getOutputCount();
+        boolean multiAction = inputCount == QPaddleController.STATE_SIZE;
+
+        double[] scratch = compiled != null ? compiled.createScratch() : null;
+        QuantizedNetwork.Scratch quantizedScratch = quantized != null ? quantized.createScratch() : null;
+        double[] input = new double[inputCount];
+        double[] output = new double[outputCount];
+        double[][] q = new double[states.length][QPaddleController.getNumActions()];
+
+        for (int i = 0; i < states.length; i++) {
+            System.arraycopy(states[i], 0, input, 0, states[i].length);
+
+            // Older networks take the action as an 8th input and need one pass per action
+            for (int a = 0; a < (multiAction ? 1 : q[i].length); a++) {
+                if (!multiAction) {
+                    input[QPaddleController.STATE_SIZE] = QPaddleController.getAction(a);
+                }
+
+                if (compiled != null) {
+                    compiled.compute(input, output, scratch);
+                } else {
+                    quantized.compute(input, output, quantizedScratch);
+                }
+
+                if (multiAction) {
+                    System.arraycopy(output, 0, q[i], 0, q[i].length);
+                } else {
+                    q[i][a] = output[0];
+                }
+            }
+        }
+
+        return q;
+    }
+
+    private static int argMax(double[] values) {
+        int best = 0;
+
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+
+        return best;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: QuantizationReport <readNNFile> [states=<n>] [episodes=<n>] [seed=<n>]");
+        System.exit(1);
+    }
+}
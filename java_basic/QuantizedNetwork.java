@@ -0,0 +1,280 @@
+
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class QuantizedNetwork {
+
+    // INT8 is for QuantizationReport and InferenceBenchmark only. On nn_basic.eg it picks another
+    // action than double in about 15% of visited states, still about 6% with four of its seven weight
+    // layers left in floats, so PongUI doesn't offer it for play
+    public enum Precision {
+        FLOAT32, INT8
+    }
+
+    // Per-caller buffers for compute(), see createScratch()
+    public static final class Scratch {
+
+        final float[] activations;
+        final short[] quantized;
+
+        private Scratch(int neuronCount, int maxLayerCount) {
+            activations = new float[neuronCount];
+            quantized = new short[maxLayerCount];
+        }
+    }
+
+    // Activations are quantized to 16 bits per layer and pass. An int8 weight times one of those
+    // fits an int with room for thousands of inputs per neuron
+    private static final int ACTIVATION_LEVELS = 32767;
+
+    private final Precision precision;
+
+    // Same layout as CompiledNetwork (and Encog's FlatNetwork), see there
+    private final int[] layerCounts;
+    private final int[] layerFeedCounts;
+    private final int[] layerIndex;
+    private final int[] weightIndex;
+    private final float[] biasActivation;
+    private final int[] activations;
+
+    // FLOAT32 keeps the weights as floats. INT8 keeps every neuron's incoming weights as bytes in
+    // [-127, 127] times that neuron's own scale (its largest absolute weight / 127): one scale per
+    // layer let the largest weight of a layer wipe out the small ones of every other neuron. Bias
+    // weights stay floats, they shift a neuron's whole range and aren't worth a byte's error.
+    // Activations are floats between layers, and 16-bit integers with one scale per layer inside
+    // a pass so the dot products run on integers. The first layer stays FLOAT32 under INT8: its
+    // inputs mix pixels, velocities and (in older networks) the action, and the small weights that
+    // tell the actions apart don't survive a byte
+    private final float[] floatWeights;
+    private final byte[] byteWeights;
+    private final float[] neuronScales;
+    private final float[] biasWeights;
+    private final int maxLayerCount;
+
+    private final int inputCount;
+    private final int outputCount;
+    private final int neuronCount;
+
+    private QuantizedNetwork(FlatNetwork flat, Precision precision) {
+        this.precision = precision;
+
+        layerCounts = flat.getLayerCounts().clone();
+        layerFeedCounts = flat.getLayerFeedCounts().clone();
+        layerIndex = flat.getLayerIndex().clone();
+        weightIndex = flat.getWeightIndex().clone();
+        activations = CompiledNetwork.compileActivations(flat);
+
+        double[] bias = flat.getBiasActivation();
+        biasActivation = new float[bias.length];
+
+        for (int i = 0; i < bias.length; i++) {
+            biasActivation[i] = (float) bias[i];
+        }
+
+        inputCount = flat.getInputCount();
+        outputCount = flat.getOutputCount();
+        neuronCount = flat.getNeuronCount();
+
+        int weightCount = flat.getWeights().length;
+        floatWeights = new float[weightCount];
+        byteWeights = precision == Precision.INT8 ? new byte[weightCount] : null;
+        neuronScales = precision == Precision.INT8 ? new float[neuronCount] : null;
+        biasWeights = precision == Precision.INT8 ? new float[neuronCount] : null;
+
+        int max = 0;
+
+        for (int count : layerCounts) {
+            max = Math.max(max, count);
+        }
+
+        maxLayerCount = max;
+
+        updateWeights(flat.getWeights());
+    }
+
+    public static QuantizedNetwork quantize(BasicNetwork network, Precision precision) {
+        return new QuantizedNetwork(network.getFlat(), precision);
+    }
+
+    public void updateWeights(BasicNetwork network) {
+        // Quantizes new weights for the same structure into the existing arrays
+        double[] source = network.getFlat().getWeights();
+
+        if (source.length != weightIndex[weightIndex.length - 1]) {
+            throw new IllegalArgumentException("Cannot update weights from a network with a different structure");
+        }
+
+        updateWeights(source);
+    }
+
+    private void updateWeights(double[] source) {
+        final int last = layerIndex.length - 1;
+        final int floatLimit = precision == Precision.FLOAT32 ? source.length : weightIndex[last];
+
+        // Weights into layer last - 1 come last, from weightIndex[last - 1]
+        for (int i = precision == Precision.FLOAT32 ? 0 : weightIndex[last - 1]; i < floatLimit; i++) {
+            floatWeights[i] = (float) source[i];
+        }
+
+        if (precision == Precision.FLOAT32) {
+            return;
+        }
+
+        // Symmetric scale per neuron: its row of weights is the feeding neurons, then the bias if any
+        for (int layer = last - 1; layer > 0; layer--) {
+            final int rowSize = layerCounts[layer];
+            final int feedCount = layerFeedCounts[layer];
+
+            for (int n = 0; n < layerFeedCounts[layer - 1]; n++) {
+                final int row = weightIndex[layer - 1] + n * rowSize;
+                final int x = layerIndex[layer - 1] + n;
+                double maxAbs = 0;
+
+                for (int i = row; i < row + feedCount; i++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(source[i]));
+                }
+
+                double scale = maxAbs > 0 ? maxAbs / 127 : 1;
+                neuronScales[x] = (float) scale;
+
+                for (int i = row; i < row + feedCount; i++) {
+                    byteWeights[i] = (byte) Math.max(-127, Math.min(127, Math.round(source[i] / scale)));
+                }
+
+                // The bias slot of the byte row is never read
+                biasWeights[x] = rowSize != feedCount ? (float) source[row + feedCount] : 0;
+            }
+        }
+    }
+
+    public Scratch createScratch() {
+        return new Scratch(neuronCount, maxLayerCount);
+    }
+
+    public void compute(double[] input, double[] output, Scratch buffers) {
+        // Activations of every neuron, see createScratch()
+        final float[] scratch = buffers.activations;
+        final int last = layerIndex.length - 1;
+        final int inputOffset = layerIndex[last];
+
+        for (int i = 0; i < inputCount; i++) {
+            scratch[inputOffset + i] = (float) input[i];
+        }
+
+        for (int i = 0; i < layerIndex.length; i++) {
+            if (layerCounts[i] != layerFeedCounts[i]) {
+                scratch[layerIndex[i] + layerFeedCounts[i]] = biasActivation[i];
+            }
+        }
+
+        for (int layer = last; layer > 0; layer--) {
+            if (precision == Precision.FLOAT32 || layer == last) {
+                computeFloatLayer(layer, scratch);
+            } else {
+                computeByteLayer(layer, scratch, buffers.quantized);
+            }
+
+            if (activations[layer - 1] == CompiledNetwork.LOG) {
+                final int outputIndex = layerIndex[layer - 1];
+                final int limitX = outputIndex + layerFeedCounts[layer - 1];
+
+                for (int x = outputIndex; x < limitX; x++) {
+                    scratch[x] = (float) (scratch[x] >= 0 ? Math.log(1 + scratch[x]) : -Math.log(1 - scratch[x]));
+                }
+            }
+        }
+
+        for (int i = 0; i < outputCount; i++) {
+            output[i] = scratch[i];
+        }
+    }
+
+    private void computeFloatLayer(int layer, float[] scratch) {
+        final int inputIndex = layerIndex[layer];
+        final int outputIndex = layerIndex[layer - 1];
+        final int limitX = outputIndex + layerFeedCounts[layer - 1];
+        final int limitY = inputIndex + layerCounts[layer];
+
+        int index = weightIndex[layer - 1];
+
+        for (int x = outputIndex; x < limitX; x++) {
+            float sum = 0;
+
+            for (int y = inputIndex; y < limitY; y++) {
+                sum += floatWeights[index++] * scratch[y];
+            }
+
+            scratch[x] = sum;
+        }
+    }
+
+    private void computeByteLayer(int layer, float[] scratch, short[] quantized) {
+        final int inputIndex = layerIndex[layer];
+        final int outputIndex = layerIndex[layer - 1];
+        final int limitX = outputIndex + layerFeedCounts[layer - 1];
+        final int rowSize = layerCounts[layer];
+        final int feedCount = layerFeedCounts[layer];
+
+        // Quantize the layer's inputs once, instead of converting a byte to a float per weight
+        float maxAbs = 0;
+
+        for (int y = 0; y < feedCount; y++) {
+            maxAbs = Math.max(maxAbs, Math.abs(scratch[inputIndex + y]));
+        }
+
+        final float activationScale = maxAbs > 0 ? maxAbs / ACTIVATION_LEVELS : 1;
+        final float inverseScale = 1 / activationScale;
+
+        for (int y = 0; y < feedCount; y++) {
+            quantized[y] = (short) Math.round(scratch[inputIndex + y] * inverseScale);
+        }
+
+        final float bias = rowSize != feedCount ? scratch[inputIndex + feedCount] : 0;
+        int row = weightIndex[layer - 1];
+
+        for (int x = outputIndex; x < limitX; x++) {
+            int sum = 0;
+
+            for (int y = 0; y < feedCount; y++) {
+                sum += byteWeights[row + y] * quantized[y];
+            }
+
+            // Back to floats once per neuron
+            scratch[x] = sum * neuronScales[x] * activationScale + biasWeights[x] * bias;
+            row += rowSize;
+        }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    public int getWeightBytes() {
+        // Size of the weights the forward pass streams through
+        if (precision == Precision.FLOAT32) {
+            return floatWeights.length * Float.BYTES;
+        }
+
+        // First layer in floats, then bytes plus a scale and a float bias weight per neuron
+        final int last = layerIndex.length - 1;
+        int neurons = 0;
+
+        for (int layer = 0; layer < last - 1; layer++) {
+            neurons += layerFeedCounts[layer];
+        }
+
+        return (weightIndex[last] - weightIndex[last - 1]) * Float.BYTES + weightIndex[last - 1] + 2 * neurons * Float.BYTES;
+    }
+}
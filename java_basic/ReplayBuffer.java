@@ -0,0 +1,120 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ReplayBuffer {
+
+    private final int capacity;
+    private final int stateSize;
+
+    // One flat column per field, row i of a state column lives at [i * stateSize, (i + 1) * stateSize)
+    private final double[] states;
+    private final int[] actions;
+    private final double[] rewards;
+    private final double[] nextStates;
+    private final boolean[] done;
+
+    // Next row to write and number of valid rows
+    private int next;
+    private int size;
+
+    // Rows written since the last call to resetAddedCount()
+    private int addedCount;
+
+    public ReplayBuffer(int capacity, int stateSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+
+        states = new double[capacity * stateSize];
+        actions = new int[capacity];
+        rewards = new double[capacity];
+        nextStates = new double[capacity * stateSize];
+        done = new boolean[capacity];
+    }
+
+    public int add(double[] state, int action, double reward, double[] nextState, boolean done) {
+        // Once full, the oldest row is overwritten
+        int row = next;
+
+        System.arraycopy(state, 0, states, row * stateSize, stateSize);
+        actions[row] = action;
+        rewards[row] = reward;
+        System.arraycopy(nextState, 0, nextStates, row * stateSize, stateSize);
+        this.done[row] = done;
+
+        next = (next + 1) % capacity;
+
+        if (size < capacity) {
+            size++;
+        }
+
+        addedCount++;
+
+        return row;
+    }
+
+    public void sample(int[] rows, int count, SplittableRandom random) {
+        // Uniform with replacement, written into the caller's array so nothing is allocated
+        for (int i = 0; i < count; i++) {
+            rows[i] = random.nextInt(size);
+        }
+    }
+
+    public int getRow(int i) {
+        // Row holding the i-th oldest transition
+        return size < capacity ? i : (next + i) % capacity;
+    }
+
+    public void copyState(int row, double[] state, int offset) {
+        System.arraycopy(states, row * stateSize, state, offset, stateSize);
+    }
+
+    public void copyNextState(int row, double[] nextState, int offset) {
+        System.arraycopy(nextStates, row * stateSize, nextState, offset, stateSize);
+    }
+
+    public int getAction(int row) {
+        return actions[row];
+    }
+
+    public double getReward(int row) {
+        return rewards[row];
+    }
+
+    public boolean isDone(int row) {
+        return done[row];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getStateSize() {
+        return stateSize;
+    }
+
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    public void resetAddedCount() {
+        addedCount = 0;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+        addedCount = 0;
+    }
+}
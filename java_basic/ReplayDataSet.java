@@ -0,0 +1,343 @@
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ReplayDataSet implements MLDataSet {
+
+    // Read-only view over a batch of ReplayBuffer rows so Encog trainers can train on the buffer
+    // directly. Targets come from computeTargets(), using the network that is about to be trained
+    // and optionally a separate network for bootstrapping
+
+    // Rows whose targets computeTargets() computes together, one pass per network
+    private static final int TARGET_BLOCK_SIZE = 64;
+
+    private final ReplayBuffer buffer;
+    private final double[] validActions;
+
+    // Networks that output one Q-value per action take the state alone, the older ones take
+    // the state plus the action and output a single Q-value
+    private final boolean multiAction;
+    private final int inputSize;
+    private final int idealSize;
+
+    // Rows of the current batch with their targets and importance-sampling weights, all sized
+    // for a full buffer up front
+    private final int[] rows;
+    private final double[] ideals;
+    private final double[] weights;
+    private final double[] tdErrors;
+    private int count;
+
+    // Scratch buffers for updatePriorities()
+    private final double[] input;
+    private final double[] output;
+
+    // Scratch buffers for computeTargets() and compiled copies of the networks it was given
+    private final int evaluationsPerRow;
+    private final double[] blockInputs;
+    private final double[] blockOutputs;
+    private final double[] bootstrapOutputs;
+    private final double[] blockTargets;
+    private double[] blockScratch;
+    private CompiledNetwork compiledNetwork;
+    private CompiledNetwork compiledBootstrapNetwork;
+
+    // Applied to every state on its way into a network, the buffer keeps them raw
+    private InputNormalizer normalizer;
+
+    public ReplayDataSet(ReplayBuffer buffer, BasicNetwork network, double[] validActions) {
+        this.buffer = buffer;
+        this.validActions = validActions;
+
+        multiAction = network.getInputCount() == buffer.getStateSize();
+        inputSize = network.getInputCount();
+        idealSize = network.getOutputCount();
+
+        rows = new int[buffer.getCapacity()];
+        ideals = new double[buffer.getCapacity() * idealSize];
+        weights = new double[buffer.getCapacity()];
+        tdErrors = new double[buffer.getCapacity()];
+
+        input = new double[inputSize];
+        output = new double[idealSize];
+
+        // Single-output networks take every action as an input of its own
+        evaluationsPerRow = multiAction ? 1 : validActions.length;
+        blockInputs = new double[TARGET_BLOCK_SIZE * evaluationsPerRow * inputSize];
+        blockOutputs = new double[TARGET_BLOCK_SIZE * evaluationsPerRow * idealSize];
+        bootstrapOutputs = new double[TARGET_BLOCK_SIZE * evaluationsPerRow * idealSize];
+        blockTargets = new double[TARGET_BLOCK_SIZE];
+    }
+
+    public void sample(int batchSize, SplittableRandom random) {
+        count = Math.min(batchSize, rows.length);
+        buffer.sample(rows, count, random);
+        Arrays.fill(weights, 0, count, 1.0);
+    }
+
+    public void sample(PrioritizedReplayBuffer prioritized, int batchSize, SplittableRandom random) {
+        count = Math.min(batchSize, rows.length);
+        prioritized.sample(rows, weights, count, random);
+    }
+
+    public void useAll() {
+        count = buffer.size();
+
+        for (int i = 0; i < count; i++) {
+            rows[i] = i;
+        }
+
+        Arrays.fill(weights, 0, count, 1.0);
+    }
+
+    public void computeTargets(BasicNetwork network, double gamma) {
+        computeTargets(network, network, gamma, false);
+    }
+
+    public void computeTargets(BasicNetwork network, BasicNetwork bootstrapNetwork, double gamma) {
+        computeTargets(network, bootstrapNetwork, gamma, false);
+    }
+
+    public void computeTargets(BasicNetwork network, BasicNetwork bootstrapNetwork, double gamma, boolean doubleQ) {
+        // bootstrapNetwork only estimates the value of the next state, so it can be a frozen target network.
+        // With doubleQ the next action is the one network prefers and bootstrapNetwork only scores it,
+        // so one network's overestimates aren't picked and scored by that same network
+        compiledNetwork = refresh(compiledNetwork, network);
+
+        boolean separate = bootstrapNetwork != network;
+
+        if (separate) {
+            compiledBootstrapNetwork = refresh(compiledBootstrapNetwork, bootstrapNetwork);
+        }
+
+        CompiledNetwork bootstrap = separate ? compiledBootstrapNetwork : compiledNetwork;
+        boolean selectWithNetwork = doubleQ && separate;
+
+        if (blockScratch == null) {
+            blockScratch = compiledNetwork.createBatchScratch(TARGET_BLOCK_SIZE * evaluationsPerRow);
+        }
+
+        // Q-values of every action in a row: one multi-action output, or one output per action
+        final int numQValues = evaluationsPerRow * idealSize;
+
+        for (int start = 0; start < count; start += TARGET_BLOCK_SIZE) {
+            int blockSize = Math.min(TARGET_BLOCK_SIZE, count - start);
+
+            for (int i = 0; i < blockSize; i++) {
+                int row = rows[start + i];
+
+                for (int a = 0; a < evaluationsPerRow; a++) {
+                    int offset = (i * evaluationsPerRow + a) * inputSize;
+
+                    buffer.copyNextState(row, blockInputs, offset);
+                    normalize(blockInputs, offset);
+
+                    if (!multiAction) {
+                        blockInputs[offset + inputSize - 1] = validActions[a];
+                    }
+                }
+            }
+
+            // One pass per network for the whole block
+            bootstrap.computeBatch(blockInputs, bootstrapOutputs, blockSize * evaluationsPerRow, blockScratch);
+
+            if (selectWithNetwork) {
+                compiledNetwork.computeBatch(blockInputs, blockOutputs, blockSize * evaluationsPerRow, blockScratch);
+            }
+
+            for (int i = 0; i < blockSize; i++) {
+                int row = rows[start + i];
+                int offset = i * numQValues;
+                double nextQ = 0;
+
+                if (!buffer.isDone(row)) {
+                    int action = argmax(selectWithNetwork ? blockOutputs : bootstrapOutputs, offset, numQValues);
+                    nextQ = bootstrapOutputs[offset + action];
+                }
+
+                blockTargets[i] = buffer.getReward(row) + gamma * nextQ;
+            }
+
+            if (multiAction) {
+                // Only the output of the action taken gets an error, the others are asked for what they already give
+                for (int i = 0; i < blockSize; i++) {
+                    buffer.copyState(rows[start + i], blockInputs, i * inputSize);
+                    normalize(blockInputs, i * inputSize);
+                }
+
+                compiledNetwork.computeBatch(blockInputs, blockOutputs, blockSize, blockScratch);
+
+                for (int i = 0; i < blockSize; i++) {
+                    int offset = (start + i) * idealSize;
+
+                    System.arraycopy(blockOutputs, i * idealSize, ideals, offset, idealSize);
+                    ideals[offset + buffer.getAction(rows[start + i])] = blockTargets[i];
+                }
+            } else {
+                for (int i = 0; i < blockSize; i++) {
+                    ideals[start + i] = blockTargets[i];
+                }
+            }
+        }
+    }
+
+    private void normalize(double[] values, int offset) {
+        if (normalizer != null) {
+            normalizer.normalize(values, offset);
+        }
+    }
+
+    public void setNormalizer(InputNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    private static CompiledNetwork refresh(CompiledNetwork compiled, BasicNetwork network) {
+        // Compiled once, then only the weights are copied over
+        if (compiled == null) {
+            return CompiledNetwork.compile(network);
+        }
+
+        compiled.updateWeights(network);
+        return compiled;
+    }
+
+    private static int argmax(double[] values, int offset, int length) {
+        int best = 0;
+
+        for (int a = 1; a < length; a++) {
+            if (values[offset + a] > values[offset + best]) {
+                best = a;
+            }
+        }
+
+        return best;
+    }
+
+    public void updatePriorities(PrioritizedReplayBuffer prioritized, BasicNetwork network) {
+        // TD error of every row in the batch against the network as it is after training
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int action = multiAction ? buffer.getAction(row) : 0;
+
+            buffer.copyState(row, input, 0);
+            normalize(input, 0);
+
+            if (!multiAction) {
+                input[inputSize - 1] = validActions[buffer.getAction(row)];
+            }
+
+            network.compute(input, output);
+            tdErrors[i] = ideals[i * idealSize + action] - output[action];
+        }
+
+        prioritized.updatePriorities(rows, tdErrors, count);
+    }
+
+    @Override
+    public void getRecord(long index, MLDataPair pair) {
+        // Copies into the pair's own arrays, which is how the trainers reuse one pair per worker
+        int row = rows[(int) index];
+        double[] pairInput = pair.getInputArray();
+
+        buffer.copyState(row, pairInput, 0);
+        normalize(pairInput, 0);
+
+        if (!multiAction) {
+            pairInput[inputSize - 1] = validActions[buffer.getAction(row)];
+        }
+
+        System.arraycopy(ideals, (int) index * idealSize, pair.getIdealArray(), 0, idealSize);
+
+        // Importance-sampling weight, the trainers scale each record's gradient by its significance
+        pair.setSignificance(weights[(int) index]);
+    }
+
+    @Override
+    public MLDataPair get(int index) {
+        MLDataPair pair = BasicMLDataPair.createPair(inputSize, idealSize);
+        getRecord(index, pair);
+        return pair;
+    }
+
+    @Override
+    public long getRecordCount() {
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getIdealSize() {
+        return idealSize;
+    }
+
+    @Override
+    public boolean isSupervised() {
+        return true;
+    }
+
+    @Override
+    public MLDataSet openAdditional() {
+        // getRecord() doesn't change anything, so every worker can share this view
+        return this;
+    }
+
+    @Override
+    public void add(MLData data1) {
+        throw new UnsupportedOperationException("Add transitions to the ReplayBuffer instead");
+    }
+
+    @Override
+    public void add(MLData inputData, MLData idealData) {
+        throw new UnsupportedOperationException("Add transitions to the ReplayBuffer instead");
+    }
+
+    @Override
+    public void add(MLDataPair inputData) {
+        throw new UnsupportedOperationException("Add transitions to the ReplayBuffer instead");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Iterator<MLDataPair> iterator() {
+        return new Iterator<MLDataPair>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public MLDataPair next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(index++);
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.flat.FlatNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ShardedGradient {
+
+    // Records per shard. Fixed, so the shards (and the order their sums are added in) don't depend
+    // on how many workers there are, and the result is the same bit for bit with any number of them
+    public static final int SHARD_SIZE = 256;
+
+    private final int numWorkers;
+    private final int weightCount;
+    private final int outputCount;
+
+    // One pass and one pair per worker, none of them shared
+    private final NetworkGradient[] passes;
+    private final MLDataPair[] pairs;
+
+    // Partial gradient and error of every shard, grown to the largest data set seen
+    private double[][] shardGradients;
+    private double[] shardErrors;
+
+    // Null with a single worker, which then runs everything on the calling thread
+    private final ExecutorService pool;
+
+    public ShardedGradient(FlatNetwork flat, int numWorkers) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of gradient workers must be at least 1");
+        }
+
+        this.numWorkers = numWorkers;
+        weightCount = flat.getWeights().length;
+        outputCount = flat.getOutputCount();
+
+        passes = new NetworkGradient[numWorkers];
+        pairs = new MLDataPair[numWorkers];
+
+        for (int w = 0; w < numWorkers; w++) {
+            passes[w] = new NetworkGradient(flat);
+            pairs[w] = BasicMLDataPair.createPair(flat.getInputCount(), outputCount);
+        }
+
+        shardGradients = new double[0][];
+        shardErrors = new double[0];
+
+        pool = numWorkers > 1 ? Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "GradientWorker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public double compute(MLDataSet data, double scale, double[] gradients) {
+        // Sets gradients to the sum over data of scale * significance * d((actual - ideal)^2 / 2) / dw
+        // and returns the mean squared error per output. The network must not change meanwhile
+        final int count = data.size();
+        final int numShards = (count + SHARD_SIZE - 1) / SHARD_SIZE;
+
+        ensureShards(numShards);
+
+        if (pool == null) {
+            computeShards(0, 1, data, numShards, scale);
+        } else {
+            // Worker w takes shards w, w + numWorkers, ... so they all get a similar share
+            List<Callable<Void>> tasks = new ArrayList<>(numWorkers);
+
+            for (int w = 0; w < Math.min(numWorkers, numShards); w++) {
+                final int worker = w;
+
+                tasks.add(() -> {
+                    computeShards(worker, numWorkers, data, numShards, scale);
+                    return null;
+                });
+            }
+
+            try {
+                for (Future<Void> result : pool.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while computing gradients", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Cannot compute gradients", e.getCause());
+            }
+        }
+
+        // Reduce in shard order whatever thread finished first
+        Arrays.fill(gradients, 0);
+        double error = 0;
+
+        for (int s = 0; s < numShards; s++) {
+            double[] shard = shardGradients[s];
+
+            for (int w = 0; w < weightCount; w++) {
+                gradients[w] += shard[w];
+            }
+
+            error += shardErrors[s];
+        }
+
+        return count > 0 ? error / (count * outputCount) : Double.NaN;
+    }
+
+    private void computeShards(int worker, int stride, MLDataSet data, int numShards, double scale) {
+        NetworkGradient pass = passes[worker];
+        MLDataPair pair = pairs[worker];
+
+        for (int s = worker; s < numShards; s += stride) {
+            double[] shard = shardGradients[s];
+            double error = 0;
+
+            Arrays.fill(shard, 0);
+
+            int end = Math.min((s + 1) * SHARD_SIZE, data.size());
+
+            for (int i = s * SHARD_SIZE; i < end; i++) {
+                data.getRecord(i, pair);
+                error += pair.getSignificance() * pass.accumulate(pair.getInputArray(), pair.getIdealArray(), scale * pair.getSignificance(), shard);
+            }
+
+            shardErrors[s] = error;
+        }
+    }
+
+    private void ensureShards(int numShards) {
+        if (numShards > shardGradients.length) {
+            int oldLength = shardGradients.length;
+
+            shardGradients = Arrays.copyOf(shardGradients, numShards);
+            shardErrors = new double[numShards];
+
+            for (int s = oldLength; s < numShards; s++) {
+                shardGradients[s] = new double[weightCount];
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+}
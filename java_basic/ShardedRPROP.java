@@ -0,0 +1,145 @@
+
+import java.util.Arrays;
+import org.encog.ml.data.MLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.TrainingContinuation;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ShardedRPROP {
+
+    // Encog's iRPROP+ defaults
+    private static final double INITIAL_UPDATE = 0.1;
+    private static final double MAX_STEP = 50;
+    private static final double MIN_STEP = 1e-6;
+    private static final double POSITIVE_ETA = 1.2;
+    private static final double NEGATIVE_ETA = 0.5;
+    private static final double ZERO_TOLERANCE = 1e-16;
+
+    // Same type name as Encog's trainer, so paused states can be resumed by either of them
+    private static final String TRAINING_TYPE = "ResilientPropagation";
+
+    // The network's own flat weights, updated in place
+    private final double[] weights;
+    private final ShardedGradient gradient;
+
+    // Gradients follow Encog's sign, -dE/dw, so lastGradients means the same thing in a paused state
+    private final double[] gradients;
+    private final double[] lastGradients;
+    private final double[] updateValues;
+    private final double[] lastWeightChanges;
+    private double lastError;
+    private double error;
+
+    public ShardedRPROP(BasicNetwork network, int numWorkers) {
+        weights = network.getFlat().getWeights();
+        gradient = new ShardedGradient(network.getFlat(), numWorkers);
+
+        gradients = new double[weights.length];
+        lastGradients = new double[weights.length];
+        updateValues = new double[weights.length];
+        lastWeightChanges = new double[weights.length];
+
+        reset();
+    }
+
+    public void iteration(MLDataSet data) {
+        error = gradient.compute(data, -1, gradients);
+
+        for (int w = 0; w < weights.length; w++) {
+            int change = sign(gradients[w] * lastGradients[w]);
+            double weightChange = 0;
+
+            if (change > 0) {
+                // Same direction as last time: speed up
+                updateValues[w] = Math.min(updateValues[w] * POSITIVE_ETA, MAX_STEP);
+                weightChange = sign(gradients[w]) * updateValues[w];
+                lastGradients[w] = gradients[w];
+            } else if (change < 0) {
+                // Jumped over a minimum: slow down, and undo the jump if the error got worse
+                updateValues[w] = Math.max(updateValues[w] * NEGATIVE_ETA, MIN_STEP);
+
+                if (error > lastError) {
+                    weightChange = -lastWeightChanges[w];
+                }
+
+                lastGradients[w] = 0;
+            } else {
+                weightChange = sign(gradients[w]) * updateValues[w];
+                lastGradients[w] = gradients[w];
+            }
+
+            weights[w] += weightChange;
+            lastWeightChanges[w] = weightChange;
+        }
+
+        lastError = error;
+    }
+
+    private static int sign(double value) {
+        if (Math.abs(value) < ZERO_TOLERANCE) {
+            return 0;
+        }
+
+        return value > 0 ? 1 : -1;
+    }
+
+    public double getError() {
+        return error;
+    }
+
+    public void reset() {
+        Arrays.fill(lastGradients, 0);
+        Arrays.fill(updateValues, INITIAL_UPDATE);
+        Arrays.fill(lastWeightChanges, 0);
+        lastError = Double.POSITIVE_INFINITY;
+        error = Double.NaN;
+    }
+
+    public void startBatch() {
+        // What pause() and resume() between two data sets amount to, without the copies: step sizes
+        // and last gradients carry over, the last data set's error and weight changes don't
+        Arrays.fill(lastWeightChanges, 0);
+        lastError = Double.POSITIVE_INFINITY;
+        error = Double.NaN;
+    }
+
+    public TrainingContinuation pause() {
+        TrainingContinuation state = new TrainingContinuation();
+        state.setTrainingType(TRAINING_TYPE);
+        state.set(ResilientPropagation.LAST_GRADIENTS, lastGradients.clone());
+        state.set(ResilientPropagation.UPDATE_VALUES, updateValues.clone());
+
+        return state;
+    }
+
+    public boolean isValidResume(TrainingContinuation state) {
+        Object savedGradients = state.get(ResilientPropagation.LAST_GRADIENTS);
+        Object savedUpdates = state.get(ResilientPropagation.UPDATE_VALUES);
+
+        return TRAINING_TYPE.equals(state.getTrainingType())
+                && savedGradients instanceof double[] && ((double[]) savedGradients).length == weights.length
+                && savedUpdates instanceof double[] && ((double[]) savedUpdates).length == weights.length;
+    }
+
+    public void resume(TrainingContinuation state) {
+        if (!isValidResume(state)) {
+            throw new IllegalArgumentException("Cannot resume RPROP from a state of a different trainer or network");
+        }
+
+        reset();
+        System.arraycopy((double[]) state.get(ResilientPropagation.LAST_GRADIENTS), 0, lastGradients, 0, weights.length);
+        System.arraycopy((double[]) state.get(ResilientPropagation.UPDATE_VALUES), 0, updateValues, 0, weights.length);
+    }
+
+    public void shutdown() {
+        gradient.shutdown();
+    }
+
+    public int getNumWorkers() {
+        return gradient.getNumWorkers();
+    }
+}
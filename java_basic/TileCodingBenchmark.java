@@ -0,0 +1,181 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public class TileCodingBenchmark {
+
+    public static void main(String[] args) {
+        int numTilings = 8;
+        int tilesPerFeature = 8;
+        double alpha = 0.1;
+        int maxNumEpisodes = 20000;
+        SplittableRandom masterRandom = new SplittableRandom();
+
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+
+            if (option.length != 2) {
+                printUsage();
+            } else if (option[0].equals("tilings")) {
+                numTilings = Integer.parseInt(option[1]);
+            } else if (option[0].equals("tiles")) {
+                tilesPerFeature = Integer.parseInt(option[1]);
+            } else if (option[0].equals("alpha")) {
+                alpha = Double.parseDouble(option[1]);
+            } else if (option[0].equals("episodes")) {
+                maxNumEpisodes = Integer.parseInt(option[1]);
+            } else if (option[0].equals("seed")) {
+                masterRandom = new SplittableRandom(Long.parseLong(option[1]));
+            } else {
+                printUsage();
+            }
+        }
+
+        // Same training schedule as PongUI, except the backend learns on every step
+        int episodesPerReport = Math.max(1, maxNumEpisodes / 20);
+        double maxEpsilon = 0.9;
+        double minEpsilon = 0;
+        int epsilonEpisodes = Math.max(2, maxNumEpisodes / 4);
+        double gamma = 0.9;
+        int maxNumHitsPerEpisode = 10;
+
+        GameBoard board = new GameBoard(300, 200, true, false, masterRandom.split());
+        TileCodedQFunction qFunction = TileCodedQFunction.forBoard(board, numTilings, tilesPerFeature, alpha);
+
+        // One-step targets, one train() call per transition
+        QPaddleController ai = new QPaddleController(board, PaddleController.LEFT, maxEpsilon, new OneStepQFunction(qFunction, gamma, 1), true, masterRandom.split());
+        ai.setMaxNumHits(maxNumHitsPerEpisode);
+        ai.startTrainingEpisode();
+        board.addGameBoardListener(ai);
+
+        // Greedy player sharing the table, for evaluations between reports
+        GameBoard testBoard = new GameBoard(board.getWidth(), board.getHeight(), true, false, masterRandom.split());
+        QPaddleController tester = new QPaddleController(testBoard, PaddleController.LEFT, 0, qFunction, false, masterRandom.split());
+
+        System.out.printf("%-9s %-7s %-9s %-14s %-13s %-18s\n", "Episode", "Epsilon", "Entries", "Bytes/Entry", "Updates/sec", "Mean Miss Distance");
+
+        long trainNanos = 0;
+        long reportUpdates = 0;
+        long reportNanos = 0;
+
+        for (int curEpisode = 1; curEpisode <= maxNumEpisodes; curEpisode++) {
+            long start = System.nanoTime();
+
+            while (!board.isDone()) {
+                board.update();
+            }
+
+            board.reset();
+            ai.startTrainingEpisode();
+
+            long nanos = System.nanoTime() - start;
+            trainNanos += nanos;
+            reportNanos += nanos;
+
+            // Update epsilon
+            if ((curEpisode + 1) < epsilonEpisodes) {
+                ai.setEpsilon(((minEpsilon - maxEpsilon) / (epsilonEpisodes - 1)) * curEpisode + maxEpsilon);
+            } else {
+                ai.setEpsilon(minEpsilon);
+            }
+
+            if (curEpisode % episodesPerReport == 0) {
+                // Training throughput including the simulation, evaluation time left out
+                long updates = qFunction.getNumUpdates() - reportUpdates;
+                reportUpdates = qFunction.getNumUpdates();
+
+                double[] testResults = PongUI.testQPaddleController(testBoard, tester, 75);
+                System.out.printf("%-9d %-7.3f %-9d %-14.1f %-13.0f %-18.3f\n", curEpisode, ai.getEpsilon(), qFunction.getNumEntries(), (double) qFunction.getMemoryBytes() / qFunction.getNumEntries(), updates / (reportNanos / 1e9), testResults[5]);
+
+                reportNanos = 0;
+            }
+        }
+
+        System.out.println();
+        System.out.println(qFunction.getNumUpdates() + " TD updates in " + trainNanos / 1000000 + " ms of training, " + qFunction.getNumEntries() + " entries in " + qFunction.getMemoryBytes() / 1024 + " KB (" + numTilings + " tilings of " + tilesPerFeature + " tiles)");
+
+        benchmarkTable(qFunction, testBoard, tester);
+    }
+
+    private static void benchmarkTable(TileCodedQFunction qFunction, GameBoard testBoard, QPaddleController tester) {
+        // The table alone, without the simulation: lookups and updates on states the greedy player visits
+        double[][] states = new double[4096][QPaddleController.STATE_SIZE];
+        int[] numRecorded = {0};
+
+        GameBoardListener recorder = (GameBoard b, boolean leftHit, boolean rightHit) -> {
+            if (numRecorded[0] < states.length) {
+                tester.getStateInput(b, states[numRecorded[0]++]);
+            }
+        };
+
+        testBoard.reset();
+        tester.startTrainingEpisode();
+        testBoard.addGameBoardListener(recorder);
+        testBoard.addGameBoardListener(tester);
+
+        while (numRecorded[0] < states.length) {
+            testBoard.update();
+
+            if (testBoard.isDone()) {
+                testBoard.reset();
+                tester.startTrainingEpisode();
+            }
+        }
+
+        testBoard.removeGameBoardListener(tester);
+        testBoard.removeGameBoardListener(recorder);
+
+        // Targets equal to the current values, so the updates exercise the table without changing it
+        double[][] targets = new double[states.length][QPaddleController.getNumActions()];
+
+        for (int i = 0; i < states.length; i++) {
+            qFunction.computeQValues(states[i], targets[i]);
+        }
+
+        int numOperations = 10000000;
+        double[] qValues = new double[QPaddleController.getNumActions()];
+
+        System.out.println();
+        System.out.printf("%-10s %-12s %-14s\n", "Operation", "Count", "Ops/sec");
+
+        // Run everything twice so the second round is measured with a warm JIT
+        for (int round = 0; round < 2; round++) {
+            double sink = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < numOperations; i++) {
+                qFunction.computeQValues(states[i & (states.length - 1)], qValues);
+                sink += qValues[0];
+            }
+
+            long lookupNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            for (int i = 0; i < numOperations; i++) {
+                int s = i & (states.length - 1);
+                int action = i % qValues.length;
+
+                qFunction.update(states[s], action, targets[s][action]);
+            }
+
+            long updateNanos = System.nanoTime() - start;
+
+            if (round == 1) {
+                System.out.printf("%-10s %-12d %-14.0f\n", "Lookup", numOperations, numOperations / (lookupNanos / 1e9));
+                System.out.printf("%-10s %-12d %-14.0f\n", "Update", numOperations, numOperations / (updateNanos / 1e9));
+            }
+
+            if (sink == 42.4242) {
+                System.out.println();
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: TileCodingBenchmark [tilings=<n>] [tiles=<n>] [alpha=<a>] [episodes=<n>] [seed=<n>]");
+        System.exit(1);
+    }
+}
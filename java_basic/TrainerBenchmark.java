@@ -0,0 +1,87 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public class TrainerBenchmark {
+
+    // A full-batch RPROP update on 64k samples takes seconds, so it gets far fewer updates than the
+    // mini-batch steps. Its per-update figures are still comparable
+    private static final int MAX_RPROP_UPDATES = 10;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: TrainerBenchmark <minibatchSize> <numUpdates>");
+            System.exit(1);
+        }
+
+        int minibatchSize = Integer.parseInt(args[0]);
+        int numUpdates = Integer.parseInt(args[1]);
+        int rpropUpdates = Math.min(numUpdates, MAX_RPROP_UPDATES);
+
+        int[] sampleCounts = {1000, 4000, 16000, 64000};
+        SplittableRandom random = new SplittableRandom(1);
+
+        System.out.printf("%-10s %-10s %-12s %-14s\n", "Trainer", "Samples", "ms/Update", "Updates/sec");
+
+        // Run everything twice so the second round is measured with a warm JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            for (int samples : sampleCounts) {
+                // RPROP trains on every transition added since the last batch, so it grows with the batch
+                QLearner rprop = new QLearner(EncogQFunction.createQNetwork(random.split()), 0.9, 1, random.split());
+                rprop.setTrainingThreadCount(1);
+
+                long nanos = 0;
+
+                for (int i = 0; i < rpropUpdates; i++) {
+                    addTransitions(rprop, samples, random);
+
+                    long start = System.nanoTime();
+                    rprop.train();
+                    nanos += System.nanoTime() - start;
+                }
+
+                report(print, "rprop", samples, rpropUpdates, nanos);
+            }
+
+            for (MinibatchTrainer.Optimizer optimizer : MinibatchTrainer.Optimizer.values()) {
+                for (int samples : sampleCounts) {
+                    // A step always costs one mini-batch, however many transitions the replay holds
+                    QLearner learner = new QLearner(EncogQFunction.createQNetwork(random.split()), 0.9, 1, random.split());
+                    addTransitions(learner, samples, random);
+                    learner.enableMinibatchTraining(optimizer, MinibatchTrainer.DEFAULT_LEARNING_RATE, minibatchSize, 1);
+
+                    long start = System.nanoTime();
+                    addTransitions(learner, numUpdates, random);
+
+                    report(print, optimizer.name().toLowerCase(), samples, numUpdates, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    private static void addTransitions(QLearner learner, int count, SplittableRandom random) {
+        double[] state = new double[QPaddleController.STATE_SIZE];
+        double[] nextState = new double[QPaddleController.STATE_SIZE];
+
+        for (int i = 0; i < count; i++) {
+            // Roughly the ranges of a 300 x 200 board
+            for (int f = 0; f < state.length; f++) {
+                state[f] = random.nextDouble(-5, 200);
+                nextState[f] = state[f] + random.nextDouble(-3, 3);
+            }
+
+            learner.addTransition(state, random.nextInt(QPaddleController.getNumActions()), random.nextDouble() < 0.01 ? 10 : 0, nextState, random.nextDouble() < 0.005);
+        }
+    }
+
+    private static void report(boolean print, String trainer, int samples, int numUpdates, long nanos) {
+        if (print) {
+            System.out.printf("%-10s %-10d %-12.3f %-14.1f\n", trainer, samples, nanos / 1e6 / numUpdates, numUpdates / (nanos / 1e9));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ * @author Andres
+ */
+public final class CachedQFunction implements QFunction {
+
+    // Answers computeQValues() from a QValueCache in front of any backend and forwards everything
+    // else. The cache is dropped as soon as the backend's version moves on
+    private final QFunction backend;
+    private final QValueCache cache;
+    private int backendVersion;
+
+    // Scratch buffers, so an instance must not be shared across threads (the cache can be)
+    private final double[] stateInput;
+    private final double[] qValues;
+
+    public CachedQFunction(QFunction backend, QValueCache cache) {
+        this.backend = backend;
+        this.cache = cache;
+
+        // Whatever the cache holds may come from other weights
+        backendVersion = backend.getVersion();
+        cache.invalidate();
+
+        stateInput = new double[QPaddleController.STATE_SIZE];
+        qValues = new double[QPaddleController.getNumActions()];
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        // One lookup per state gives every action's Q-value
+        int numActions = qValues.length;
+
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(states, i * QPaddleController.STATE_SIZE, stateInput, 0, QPaddleController.STATE_SIZE);
+            computeQValues(stateInput, qValues);
+
+            if (actions == null) {
+                System.arraycopy(qValues, 0, out, i * numActions, numActions);
+            } else {
+                out[i] = qValues[actions[i]];
+            }
+        }
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        // New weights have to invalidate the cache before it is looked at
+        int version = backend.getVersion();
+
+        if (version != backendVersion) {
+            backendVersion = version;
+            cache.invalidate();
+        }
+
+        int cacheVersion = cache.getVersion();
+
+        if (cache.get(state, cacheVersion, output)) {
+            return;
+        }
+
+        backend.computeQValues(state, output);
+        cache.put(state, cacheVersion, output);
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        return backend.train(batch);
+    }
+
+    @Override
+    public int getVersion() {
+        return backend.getVersion();
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        backend.addTransition(state, action, reward, nextState, done);
+    }
+
+    @Override
+    public double commit() {
+        return backend.commit();
+    }
+
+    @Override
+    public void startEpisode() {
+        backend.startEpisode();
+    }
+
+    public QFunction getBackend() {
+        return backend;
+    }
+
+    public QValueCache getCache() {
+        return cache;
+    }
+}
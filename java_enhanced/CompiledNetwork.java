@@ -0,0 +1,178 @@
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationLOG;
+import org.encog.engine.network.activation.ActivationLinear;
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class CompiledNetwork {
+
+    static final int LINEAR = 0;
+    static final int LOG = 1;
+
+    // Same layout as Encog's FlatNetwork so the sums run in exactly the same order: layers are
+    // stored from the output (0) back to the input (layerCount - 1), each layer's neurons are at
+    // [layerIndex[i], layerIndex[i] + layerCounts[i]) of the activations, bias neuron last, and the
+    // weights into layer i - 1 start at weightIndex[i - 1], one row of layerCounts[i] per neuron
+    private final int[] layerCounts;
+    private final int[] layerFeedCounts;
+    private final int[] layerIndex;
+    private final int[] weightIndex;
+    private final double[] biasActivation;
+    private final int[] activations;
+    private final double[] weights;
+
+    private final int inputCount;
+    private final int outputCount;
+    private final int neuronCount;
+
+    private CompiledNetwork(FlatNetwork flat) {
+        layerCounts = flat.getLayerCounts().clone();
+        layerFeedCounts = flat.getLayerFeedCounts().clone();
+        layerIndex = flat.getLayerIndex().clone();
+        weightIndex = flat.getWeightIndex().clone();
+        biasActivation = flat.getBiasActivation().clone();
+        weights = flat.getWeights().clone();
+
+        inputCount = flat.getInputCount();
+        outputCount = flat.getOutputCount();
+        neuronCount = flat.getNeuronCount();
+
+        activations = compileActivations(flat);
+    }
+
+    public static CompiledNetwork compile(BasicNetwork network) {
+        return new CompiledNetwork(network.getFlat());
+    }
+
+    static int[] compileActivations(FlatNetwork flat) {
+        if (flat.getHasContext()) {
+            throw new IllegalArgumentException("Cannot compile a network with context neurons");
+        }
+
+        ActivationFunction[] functions = flat.getActivationFunctions();
+        int[] activations = new int[functions.length];
+
+        // The input layer's activation is never applied, same as in Encog
+        for (int i = 0; i < functions.length - 1; i++) {
+            if (functions[i] instanceof ActivationLOG) {
+                activations[i] = LOG;
+            } else if (functions[i] instanceof ActivationLinear) {
+                activations[i] = LINEAR;
+            } else {
+                throw new IllegalArgumentException("Cannot compile a layer with activation " + functions[i].getClass().getSimpleName());
+            }
+        }
+
+        return activations;
+    }
+
+    public void updateWeights(BasicNetwork network) {
+        // Picks up new weights for the same structure without allocating
+        double[] source = network.getFlat().getWeights();
+
+        if (source.length != weights.length) {
+            throw new IllegalArgumentException("Cannot update weights from a network with a different structure");
+        }
+
+        System.arraycopy(source, 0, weights, 0, weights.length);
+    }
+
+    public double[] createScratch() {
+        return new double[neuronCount];
+    }
+
+    public void compute(double[] input, double[] output, double[] scratch) {
+        // scratch holds every neuron's activation, see createScratch()
+        final int last = layerIndex.length - 1;
+
+        System.arraycopy(input, 0, scratch, layerIndex[last], inputCount);
+
+        // Bias neurons, written on every call since the caller owns the scratch buffer
+        for (int i = 0; i < layerIndex.length; i++) {
+            if (layerCounts[i] != layerFeedCounts[i]) {
+                scratch[layerIndex[i] + layerFeedCounts[i]] = biasActivation[i];
+            }
+        }
+
+        for (int layer = last; layer > 0; layer--) {
+            computeLayer(layer, scratch, 0);
+        }
+
+        System.arraycopy(scratch, 0, output, 0, outputCount);
+    }
+
+    public double[] createBatchScratch(int batchSize) {
+        return new double[batchSize * neuronCount];
+    }
+
+    public void computeBatch(double[] inputs, double[] outputs, int count, double[] scratch) {
+        // Rows of inputs and outputs are packed one after another, scratch comes from createBatchScratch().
+        // Layer by layer over the whole batch so each layer's weights stay hot for every sample, every
+        // sample still gets exactly the sums compute() would give it
+        final int last = layerIndex.length - 1;
+
+        for (int s = 0; s < count; s++) {
+            int base = s * neuronCount;
+
+            System.arraycopy(inputs, s * inputCount, scratch, base + layerIndex[last], inputCount);
+
+            for (int i = 0; i < layerIndex.length; i++) {
+                if (layerCounts[i] != layerFeedCounts[i]) {
+                    scratch[base + layerIndex[i] + layerFeedCounts[i]] = biasActivation[i];
+                }
+            }
+        }
+
+        for (int layer = last; layer > 0; layer--) {
+            for (int s = 0; s < count; s++) {
+                computeLayer(layer, scratch, s * neuronCount);
+            }
+        }
+
+        for (int s = 0; s < count; s++) {
+            System.arraycopy(scratch, s * neuronCount, outputs, s * outputCount, outputCount);
+        }
+    }
+
+    private void computeLayer(int layer, double[] scratch, int base) {
+        // base is where this sample's activations start in scratch
+        final int inputIndex = base + layerIndex[layer];
+        final int outputIndex = base + layerIndex[layer - 1];
+        final int inputSize = layerCounts[layer];
+        final int outputSize = layerFeedCounts[layer - 1];
+        final int limitX = outputIndex + outputSize;
+        final int limitY = inputIndex + inputSize;
+
+        int index = weightIndex[layer - 1];
+
+        for (int x = outputIndex; x < limitX; x++) {
+            double sum = 0;
+
+            for (int y = inputIndex; y < limitY; y++) {
+                sum += weights[index++] * scratch[y];
+            }
+
+            scratch[x] = sum;
+        }
+
+        if (activations[layer - 1] == LOG) {
+            // ActivationLOG: log(1 + x) for x >= 0, -log(1 - x) below
+            for (int x = outputIndex; x < limitX; x++) {
+                scratch[x] = scratch[x] >= 0 ? Math.log(1 + scratch[x]) : -Math.log(1 - scratch[x]);
+            }
+        }
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getOutputCount() {
+        return outputCount;
+    }
+}
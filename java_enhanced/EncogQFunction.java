@@ -0,0 +1,322 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.encog.engine.network.activation.ActivationLOG;
+import org.encog.engine.network.activation.ActivationLinear;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/**
+ *
+ * @author Andres
+ */
+public final class EncogQFunction implements QFunction {
+
+    // A QFunction over one Encog network and nothing else: input statistics, caching, n-step returns
+    // and learning from transitions are stages wrapped around it, see QFunction.addTransition()
+
+    // States evaluated per pass of the compiled network
+    private static final int BLOCK_SIZE = 64;
+
+    private final BasicNetwork nn;
+
+    // True when nn takes the state alone and outputs one Q-value per action, false for the
+    // older networks that take the state plus an action and output a single Q-value
+    private final boolean multiAction;
+    private final int numActions;
+
+    // Allocation-free copy of nn used for every evaluation
+    private final CompiledNetwork compiledNetwork;
+
+    // Reduced precision copy that replaces compiledNetwork for decisions when set, see setInferencePrecision()
+    private QuantizedNetwork quantizedNetwork;
+    private QuantizedNetwork.Scratch quantizedScratch;
+
+    // Moves on whenever the Q-values may have changed, see getVersion()
+    private int version;
+
+    // RPROP for train(), kept from call to call so every batch continues with the step sizes the
+    // ones before adapted (what QLearner does with its TrainingContinuation), and the pairs it
+    // trains on, reused and only grown
+    private final int nnIterations;
+    private ShardedRPROP batchTrainer;
+    private final List<MLDataPair> pairs;
+    private final List<MLDataPair> records;
+    private final BasicMLDataSet batchData;
+
+    // Scratch buffers, so an instance must not be shared across threads
+    private final double[] stateInput;
+    private final double[] legacyInput;
+    private final double[] legacyOutput;
+    private final double[] qValues;
+    private final double[] scratch;
+    private final double[] batchScratch;
+    private final double[] blockInputs;
+    private final double[] blockOutputs;
+
+    public EncogQFunction(BasicNetwork nn) {
+        this(nn, 1);
+    }
+
+    public EncogQFunction(BasicNetwork nn, int nnIterations) {
+        if (nnIterations < 1) {
+            throw new IllegalArgumentException("Number of RPROP iterations must be at least 1");
+        }
+
+        this.nn = nn;
+        this.nnIterations = nnIterations;
+
+        // Files written before the multi-action network still have the action as an 8th input
+        multiAction = nn.getInputCount() == QPaddleController.STATE_SIZE;
+        numActions = QPaddleController.getNumActions();
+
+        compiledNetwork = CompiledNetwork.compile(nn);
+
+        pairs = new ArrayList<>();
+        records = new ArrayList<>();
+        batchData = new BasicMLDataSet(records);
+
+        stateInput = new double[QPaddleController.STATE_SIZE];
+        legacyInput = new double[QPaddleController.STATE_SIZE + 1];
+        legacyOutput = new double[1];
+        qValues = new double[numActions];
+        scratch = compiledNetwork.createScratch();
+        batchScratch = compiledNetwork.createBatchScratch(BLOCK_SIZE);
+        blockInputs = new double[BLOCK_SIZE * QPaddleController.STATE_SIZE];
+        blockOutputs = new double[BLOCK_SIZE * numActions];
+    }
+
+    public static QFunction load(String readNNFileName) {
+        return load(readNNFileName, null);
+    }
+
+    public static QFunction load(String readNNFileName, QuantizedNetwork.Precision precision) {
+        // For playing and evaluating a saved network, behind the input statistics saved with it
+        EncogQFunction network = new EncogQFunction(loadNetwork(readNNFileName));
+        network.setInferencePrecision(precision);
+
+        InputNormalizer normalizer = loadNormalizer(readNNFileName);
+
+        return normalizer != null ? new NormalizedQFunction(network, normalizer) : network;
+    }
+
+    public static BasicNetwork loadNetwork(String readNNFileName) {
+        // Read the neural network file: Encog user guide
+        return (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(readNNFileName));
+    }
+
+    public static InputNormalizer loadNormalizer(String readNNFileName) {
+        // A network trained on normalized inputs has the statistics it was trained with next to it
+        File file = new File(readNNFileName + ".norm");
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return InputNormalizer.load(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read input normalization " + file, e);
+        }
+    }
+
+    public static void save(String filename, BasicNetwork nn, InputNormalizer normalizer) throws IOException {
+        // Save neural network to file: Encog user guide
+        EncogDirectoryPersistence.saveObject(new File(filename), nn);
+
+        // Its input statistics go next to it, and a stale file from a run without them must not stay there
+        File normalizerFile = new File(filename + ".norm");
+
+        if (normalizer != null) {
+            normalizer.save(normalizerFile);
+        } else {
+            normalizerFile.delete();
+        }
+    }
+
+    static BasicNetwork createQNetwork(SplittableRandom random) {
+        BasicNetwork network = new BasicNetwork();
+
+        network.addLayer(new BasicLayer(null, true, QPaddleController.STATE_SIZE));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 21));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 14));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 7));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 5));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 4));
+        network.addLayer(new BasicLayer(new ActivationLOG(), true, 3));
+        network.addLayer(new BasicLayer(new ActivationLinear(), false, QPaddleController.getNumActions()));
+
+        network.getStructure().finalizeStructure();
+        network.reset(random.nextInt());
+
+        return network;
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        // Whole blocks through the compiled network when nothing has to see states one at a time
+        if (multiAction && quantizedNetwork == null) {
+            evaluateBlocks(states, actions, out, count);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(states, i * QPaddleController.STATE_SIZE, stateInput, 0, QPaddleController.STATE_SIZE);
+            computeQValues(stateInput, qValues);
+
+            if (actions == null) {
+                System.arraycopy(qValues, 0, out, i * numActions, numActions);
+            } else {
+                out[i] = qValues[actions[i]];
+            }
+        }
+    }
+
+    private void evaluateBlocks(double[] states, int[] actions, double[] out, int count) {
+        final int stateSize = QPaddleController.STATE_SIZE;
+
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int blockSize = Math.min(BLOCK_SIZE, count - start);
+
+            System.arraycopy(states, start * stateSize, blockInputs, 0, blockSize * stateSize);
+            compiledNetwork.computeBatch(blockInputs, blockOutputs, blockSize, batchScratch);
+
+            for (int i = 0; i < blockSize; i++) {
+                if (actions == null) {
+                    System.arraycopy(blockOutputs, i * numActions, out, (start + i) * numActions, numActions);
+                } else {
+                    out[start + i] = blockOutputs[i * numActions + actions[start + i]];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        if (multiAction) {
+            // A single forward pass gives the Q-value of every action
+            computeNetwork(state, output);
+        } else {
+            // Older networks take the action as an 8th input, one pass per action
+            System.arraycopy(state, 0, legacyInput, 0, QPaddleController.STATE_SIZE);
+
+            for (int a = 0; a < numActions; a++) {
+                legacyInput[QPaddleController.STATE_SIZE] = QPaddleController.getAction(a);
+                computeNetwork(legacyInput, legacyOutput);
+                output[a] = legacyOutput[0];
+            }
+        }
+    }
+
+    private void computeNetwork(double[] input, double[] output) {
+        if (quantizedNetwork != null) {
+            quantizedNetwork.compute(input, output, quantizedScratch);
+        } else {
+            compiledNetwork.compute(input, output, scratch);
+        }
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        int count = batch.size();
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        while (pairs.size() < count) {
+            pairs.add(BasicMLDataPair.createPair(nn.getInputCount(), nn.getOutputCount()));
+        }
+
+        // Only the output of the action taken gets an error, the others are asked for what they already give
+        double error = 0;
+        records.clear();
+
+        for (int i = 0; i < count; i++) {
+            MLDataPair pair = pairs.get(i);
+            double[] input = pair.getInputArray();
+            double[] ideal = pair.getIdealArray();
+            int action = batch.getActions()[i];
+            int output = multiAction ? action : 0;
+
+            System.arraycopy(batch.getStates(), i * QPaddleController.STATE_SIZE, input, 0, QPaddleController.STATE_SIZE);
+
+            if (!multiAction) {
+                input[QPaddleController.STATE_SIZE] = QPaddleController.getAction(action);
+            }
+
+            compiledNetwork.compute(input, ideal, scratch);
+
+            double difference = batch.getTargets()[i] - ideal[output];
+            error += difference * difference;
+            ideal[output] = batch.getTargets()[i];
+
+            records.add(pair);
+        }
+
+        // Train the neural network: Encog user guide. Single-worker RPROP runs on this thread, and
+        // sums the gradient in a fixed order like QLearner's
+        if (batchTrainer == null) {
+            batchTrainer = new ShardedRPROP(nn, 1);
+        }
+
+        batchTrainer.startBatch();
+
+        for (int i = 0; i < nnIterations; i++) {
+            batchTrainer.iteration(batchData);
+        }
+
+        weightsChanged();
+
+        return error / count;
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    public void weightsChanged() {
+        // nn was changed in place (trained by a QLearner, or given new weights), so the compiled
+        // copies need its new weights
+        compiledNetwork.updateWeights(nn);
+
+        if (quantizedNetwork != null) {
+            quantizedNetwork.updateWeights(nn);
+        }
+
+        version++;
+    }
+
+    public void setInferencePrecision(QuantizedNetwork.Precision precision) {
+        // null goes back to full double precision
+        if (precision == null) {
+            quantizedNetwork = null;
+            quantizedScratch = null;
+        } else {
+            quantizedNetwork = QuantizedNetwork.quantize(nn, precision);
+            quantizedScratch = quantizedNetwork.createScratch();
+        }
+
+        version++;
+    }
+
+    public QuantizedNetwork.Precision getInferencePrecision() {
+        return quantizedNetwork != null ? quantizedNetwork.getPrecision() : null;
+    }
+
+    public boolean isMultiAction() {
+        return multiAction;
+    }
+
+    public BasicNetwork getNetwork() {
+        return nn;
+    }
+}
@@ -1,6 +1,7 @@
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /**
  *
@@ -23,6 +24,14 @@ public final class GameBoard {
     public static final int NONE_LOST = 0;
     public static final int RIGHT_LOST = 1;
 
+    // Number of doubles written by snapshotInto() and read by restoreFrom()
+    public static final int SNAPSHOT_SIZE = 16;
+
+    public static final int DEFAULT_EVENT_BLOCK_SIZE = 256;
+
+    private static final GameBoardListener[] NO_LISTENERS = new GameBoardListener[0];
+    private static final GameBoardBlockListener[] NO_BLOCK_LISTENERS = new GameBoardBlockListener[0];
+
     private final double width;
     private final double height;
 
@@ -36,18 +45,42 @@ public final class GameBoard {
     private double rightPaddleVelocityY;
     private double rightPaddleAccelerationY;
 
-    private Point2D.Double ballPosition;
-    private Point2D.Double ballVelocity;
-    private Point2D.Double ballAcceleration;
+    private final Point2D.Double ballPosition;
+    private final Point2D.Double ballVelocity;
+    private final Point2D.Double ballAcceleration;
+
+    // Copy-on-write arrays: registration swaps in a new array, dispatch reads whatever array is current
+    private volatile GameBoardListener[] gameBoardListeners;
 
-    private Vector<GameBoardListener> gameBoardListeners;
+    // Events buffered for the block listeners. Only the simulating thread touches these, in notifyListeners()
+    private GameBoardBlockListener[] gameBoardBlockListeners;
+    private int[] eventBlock;
+    private int eventCount;
+
+    // Block listener changes, resizes and flushes asked for from any thread. The simulating thread
+    // applies them between two blocks on its next update, so a new listener never sees frames from
+    // before it registered and a removed one still gets the frames buffered while it was registered
+    private volatile GameBoardBlockListener[] requestedBlockListeners;
+    private volatile int requestedEventBlockSize;
+    private volatile boolean blockRequestsPending;
+
+    // Each board owns its random stream so boards on different threads never share one
+    private final SplittableRandom random;
 
     private boolean done;
     private int whoLost;
     private int leftScore;
     private int rightScore;
 
+    // Paddle hits during the last call to update()
+    private int leftHits;
+    private int rightHits;
+
     public GameBoard(double width, double height, boolean leftPaddle, boolean rightPaddle) {
+        this(width, height, leftPaddle, rightPaddle, new SplittableRandom());
+    }
+
+    public GameBoard(double width, double height, boolean leftPaddle, boolean rightPaddle, SplittableRandom random) {
         this.width = width;
         this.height = height;
 
@@ -61,9 +94,18 @@ public final class GameBoard {
         rightPaddleVelocityY = 0;
         rightPaddleAccelerationY = 0;
 
+        ballPosition = new Point2D.Double();
+        ballVelocity = new Point2D.Double();
+        ballAcceleration = new Point2D.Double();
+
+        this.random = random;
         randomizeBall();
 
-        gameBoardListeners = new Vector<>();
+        gameBoardListeners = NO_LISTENERS;
+        gameBoardBlockListeners = NO_BLOCK_LISTENERS;
+        requestedBlockListeners = NO_BLOCK_LISTENERS;
+        eventBlock = new int[DEFAULT_EVENT_BLOCK_SIZE];
+        requestedEventBlockSize = DEFAULT_EVENT_BLOCK_SIZE;
 
         done = false;
         whoLost = NONE_LOST;
@@ -72,6 +114,10 @@ public final class GameBoard {
     }
 
     public GameBoard(GameBoard original) {
+        this(original, new SplittableRandom());
+    }
+
+    public GameBoard(GameBoard original, SplittableRandom random) {
         width = original.width;
         height = original.height;
 
@@ -90,34 +136,250 @@ public final class GameBoard {
         ballAcceleration = new Point2D.Double(original.ballAcceleration.x, original.ballAcceleration.y);
 
         // Don't copy the listeners
-        gameBoardListeners = new Vector<>();
+        gameBoardListeners = NO_LISTENERS;
+        gameBoardBlockListeners = NO_BLOCK_LISTENERS;
+        requestedBlockListeners = NO_BLOCK_LISTENERS;
+        eventBlock = new int[original.requestedEventBlockSize];
+        requestedEventBlockSize = eventBlock.length;
+
+        // Don't share the random stream either. The caller hands in its own, since splitting the
+        // original's would advance it (and change its serves) from whatever thread makes the copy
+        this.random = random;
+
+        done = original.done;
+        whoLost = original.whoLost;
+        leftScore = original.leftScore;
+        rightScore = original.rightScore;
+    }
+
+    public void copyFrom(GameBoard original) {
+        if (original.width != width || original.height != height || original.leftPaddle != leftPaddle || original.rightPaddle != rightPaddle) {
+            throw new IllegalArgumentException("Cannot copy a board with a different geometry");
+        }
+
+        leftPaddleY = original.leftPaddleY;
+        leftPaddleVelocityY = original.leftPaddleVelocityY;
+        leftPaddleAccelerationY = original.leftPaddleAccelerationY;
+
+        rightPaddleY = original.rightPaddleY;
+        rightPaddleVelocityY = original.rightPaddleVelocityY;
+        rightPaddleAccelerationY = original.rightPaddleAccelerationY;
 
+        ballPosition.setLocation(original.ballPosition.x, original.ballPosition.y);
+        ballVelocity.setLocation(original.ballVelocity.x, original.ballVelocity.y);
+        ballAcceleration.setLocation(original.ballAcceleration.x, original.ballAcceleration.y);
+
+        // Don't copy the listeners
         done = original.done;
         whoLost = original.whoLost;
         leftScore = original.leftScore;
         rightScore = original.rightScore;
     }
 
+    public void snapshotInto(double[] snapshot) {
+        snapshot[0] = leftPaddleY;
+        snapshot[1] = leftPaddleVelocityY;
+        snapshot[2] = leftPaddleAccelerationY;
+        snapshot[3] = rightPaddleY;
+        snapshot[4] = rightPaddleVelocityY;
+        snapshot[5] = rightPaddleAccelerationY;
+        snapshot[6] = ballPosition.x;
+        snapshot[7] = ballPosition.y;
+        snapshot[8] = ballVelocity.x;
+        snapshot[9] = ballVelocity.y;
+        snapshot[10] = ballAcceleration.x;
+        snapshot[11] = ballAcceleration.y;
+        snapshot[12] = done ? 1 : 0;
+        snapshot[13] = whoLost;
+        snapshot[14] = leftScore;
+        snapshot[15] = rightScore;
+    }
+
+    public void restoreFrom(double[] snapshot) {
+        leftPaddleY = snapshot[0];
+        leftPaddleVelocityY = snapshot[1];
+        leftPaddleAccelerationY = snapshot[2];
+        rightPaddleY = snapshot[3];
+        rightPaddleVelocityY = snapshot[4];
+        rightPaddleAccelerationY = snapshot[5];
+        ballPosition.setLocation(snapshot[6], snapshot[7]);
+        ballVelocity.setLocation(snapshot[8], snapshot[9]);
+        ballAcceleration.setLocation(snapshot[10], snapshot[11]);
+        done = snapshot[12] != 0;
+        whoLost = (int) snapshot[13];
+        leftScore = (int) snapshot[14];
+        rightScore = (int) snapshot[15];
+    }
+
     public void randomizeBall() {
-        double randomX = width / 2 + Math.random() * (width / 2 - BALL_DIAMETER - PADDLE_WIDTH);
-        double randomY = Math.random() * (height - BALL_DIAMETER);
+        double randomX = width / 2 + random.nextDouble() * (width / 2 - BALL_DIAMETER - PADDLE_WIDTH);
+        double randomY = random.nextDouble() * (height - BALL_DIAMETER);
 
-        ballPosition = new Point2D.Double(randomX, randomY);
+        ballPosition.setLocation(randomX, randomY);
 
-        double velocityAngle = 2 * Math.PI / 3 + Math.random() * (4 * Math.PI / 3 - 2 * Math.PI / 3);
+        double velocityAngle = 2 * Math.PI / 3 + random.nextDouble() * (4 * Math.PI / 3 - 2 * Math.PI / 3);
 
-        ballVelocity = new Point2D.Double(BALL_SPEED * Math.cos(velocityAngle), BALL_SPEED * Math.sin(velocityAngle));
-        ballAcceleration = new Point2D.Double(0, 0);
+        ballVelocity.setLocation(BALL_SPEED * Math.cos(velocityAngle), BALL_SPEED * Math.sin(velocityAngle));
+        ballAcceleration.setLocation(0, 0);
     }
 
     public void update() {
+        update(1);
+    }
+
+    public int update(int frames) {
+        if (done || frames <= 0) {
+            return 0;
+        }
+
+        leftHits = 0;
+        rightHits = 0;
+
+        int simulated = 0;
+
+        while (simulated < frames && !done) {
+            updateFrame();
+            simulated++;
+        }
+
+        // Notify the listeners once for the whole span, hits are counted in leftHits/rightHits
+        notifyListeners(leftHits > 0, rightHits > 0);
+
+        return simulated;
+    }
+
+    private void updateFrame() {
+        updatePaddles();
+
+        // Check if the ball hit the left paddle
+        if (ballPosition.x < PADDLE_WIDTH) {
+            if (!leftPaddle || (ballPosition.y + BALL_DIAMETER >= leftPaddleY && ballPosition.y <= leftPaddleY + PADDLE_HEIGHT)) {
+                ballVelocity.x = -ballVelocity.x;
+                leftHits++;
+            } else {
+                done = true;
+                whoLost = LEFT_LOST;
+
+                if (rightPaddle) {
+                    rightScore++;
+                }
+
+                return;
+            }
+        }
+
+        // Check if the ball hit the right paddle
+        if (ballPosition.x + BALL_DIAMETER > width - PADDLE_WIDTH) {
+            if (!rightPaddle || (ballPosition.y + BALL_DIAMETER >= rightPaddleY && ballPosition.y <= rightPaddleY + PADDLE_HEIGHT)) {
+                ballVelocity.x = -ballVelocity.x;
+                rightHits++;
+            } else {
+                done = true;
+                whoLost = RIGHT_LOST;
+
+                if (leftPaddle) {
+                    leftScore++;
+                }
+
+                return;
+            }
+        }
+
+        // Check if the ball hit a top/bottom wall
+        if (ballPosition.y <= 0 || ballPosition.y >= height - BALL_DIAMETER) {
+            ballVelocity.y = -ballVelocity.y;
+        }
+
+        // Check if the ball hit a left/right wall
+        if (ballPosition.x <= 0 || ballPosition.x >= width - BALL_DIAMETER) {
+            ballVelocity.x = -ballVelocity.x;
+        }
+
+        // Update the ball velocity and position
+        ballVelocity.x += ballAcceleration.x * DT;
+        ballVelocity.y += ballAcceleration.y * DT;
+        ballPosition.x += ballVelocity.x * DT;
+        ballPosition.y += ballVelocity.y * DT;
+    }
+
+    private void notifyListeners(boolean leftHit, boolean rightHit) {
+        // Plain indexed loop over the current array: no iterator and no lock per frame
+        GameBoardListener[] listeners = gameBoardListeners;
+
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].gameBoardUpdated(this, leftHit, rightHit);
+        }
+
+        if (blockRequestsPending) {
+            applyBlockRequests();
+        }
+
+        if (gameBoardBlockListeners.length == 0) {
+            return;
+        }
+
+        int event = 0;
+
+        if (leftHit) {
+            event |= GameBoardBlockListener.LEFT_HIT;
+        }
+
+        if (rightHit) {
+            event |= GameBoardBlockListener.RIGHT_HIT;
+        }
+
         if (done) {
+            event |= GameBoardBlockListener.DONE;
+        }
+
+        if (whoLost == LEFT_LOST) {
+            event |= GameBoardBlockListener.LEFT_LOST;
+        } else if (whoLost == RIGHT_LOST) {
+            event |= GameBoardBlockListener.RIGHT_LOST;
+        }
+
+        eventBlock[eventCount++] = event;
+
+        // Hand the block over once it is full or the game is over
+        if (eventCount == eventBlock.length || done) {
+            deliverEvents();
+        }
+    }
+
+    private void applyBlockRequests() {
+        // Cleared before reading, so a request made while this runs is picked up on the next update
+        blockRequestsPending = false;
+
+        // Close the current block for the listeners it was buffered for, which is also what a flush asks for
+        deliverEvents();
+
+        gameBoardBlockListeners = requestedBlockListeners;
+
+        if (requestedEventBlockSize != eventBlock.length) {
+            eventBlock = new int[requestedEventBlockSize];
+        }
+    }
+
+    private void deliverEvents() {
+        if (eventCount == 0) {
             return;
         }
 
-        boolean leftHit = false;
-        boolean rightHit = false;
+        GameBoardBlockListener[] listeners = gameBoardBlockListeners;
+
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].gameBoardFramesUpdated(this, eventBlock, eventCount);
+        }
+
+        eventCount = 0;
+    }
+
+    private void updatePaddles() {
+        updateLeftPaddle();
+        updateRightPaddle();
+    }
 
+    private void updateLeftPaddle() {
         // Check if left paddle achieved maximum speed
         if (leftPaddleVelocityY >= PADDLE_MAX_SPEED) {
             leftPaddleVelocityY = PADDLE_MAX_SPEED;
@@ -139,7 +401,9 @@ public final class GameBoard {
         // Update the left paddle velocity and position
         leftPaddleVelocityY += leftPaddleAccelerationY * DT;
         leftPaddleY += leftPaddleVelocityY * DT;
+    }
 
+    private void updateRightPaddle() {
         // Check if right paddle achieved maximum speed
         if (rightPaddleVelocityY >= PADDLE_MAX_SPEED) {
             rightPaddleVelocityY = PADDLE_MAX_SPEED;
@@ -161,71 +425,138 @@ public final class GameBoard {
         // Update the right paddle velocity and position
         rightPaddleVelocityY += rightPaddleAccelerationY * DT;
         rightPaddleY += rightPaddleVelocityY * DT;
+    }
 
-        // Check if the ball hit the left paddle
-        if (ballPosition.x < PADDLE_WIDTH) {
-            if (!leftPaddle || (ballPosition.y + BALL_DIAMETER >= leftPaddleY && ballPosition.y <= leftPaddleY + PADDLE_HEIGHT)) {
-                ballVelocity.x = -ballVelocity.x;
-                leftHit = true;
-            } else {
-                done = true;
-                whoLost = LEFT_LOST;
+    public int advanceUntilEvent(int maxSteps) {
+        // Bit-for-bit identical to calling update() frame by frame. That rules out a closed-form jump:
+        // repeated x += v doesn't round like x + n * v, so the ball still pays an addition per frame and
+        // only its checks and the listeners are skipped. See jumpUntilEvent() for the closed form
+        return advance(maxSteps, true);
+    }
 
-                if (rightPaddle) {
-                    rightScore++;
-                }
+    public int jumpUntilEvent(int maxSteps) {
+        // Same events as advanceUntilEvent(), but the ball jumps to the last quiet frame in closed form.
+        // Not bit-exact: positions drift from update() by a few ulps per jump (GameBoardBenchmark
+        // checks the tolerance), so keep it out of anything that compares against a stepped board
+        return advance(maxSteps, false);
+    }
 
-                // Notify the listeners of updates to the board
-                for (GameBoardListener listener : gameBoardListeners) {
-                    listener.gameBoardUpdated(this, leftHit, rightHit);
-                }
+    private int advance(int maxSteps, boolean exact) {
+        if (done || maxSteps <= 0) {
+            return 0;
+        }
 
-                return;
+        // The ball moves in a straight line until the next event, so skip its checks and the listeners
+        int quietFrames = Math.min(framesUntilEvent(), maxSteps - 1);
+
+        stepLeftPaddle(quietFrames);
+        stepRightPaddle(quietFrames);
+
+        if (exact) {
+            // Same arithmetic as update() so the result stays bit-for-bit identical
+            for (int i = 0; i < quietFrames; i++) {
+                ballVelocity.x += ballAcceleration.x * DT;
+                ballVelocity.y += ballAcceleration.y * DT;
+                ballPosition.x += ballVelocity.x * DT;
+                ballPosition.y += ballVelocity.y * DT;
             }
+        } else {
+            // p(t) = p + v * t + a * t * (t + 1) / 2, as in framesInside()
+            double t = quietFrames;
+            double triangle = t * (t + 1) / 2;
+
+            ballPosition.x += ballVelocity.x * DT * t + ballAcceleration.x * DT * DT * triangle;
+            ballPosition.y += ballVelocity.y * DT * t + ballAcceleration.y * DT * DT * triangle;
+            ballVelocity.x += ballAcceleration.x * DT * t;
+            ballVelocity.y += ballAcceleration.y * DT * t;
         }
 
-        // Check if the ball hit the right paddle
-        if (ballPosition.x + BALL_DIAMETER > width - PADDLE_WIDTH) {
-            if (!rightPaddle || (ballPosition.y + BALL_DIAMETER >= rightPaddleY && ballPosition.y <= rightPaddleY + PADDLE_HEIGHT)) {
-                ballVelocity.x = -ballVelocity.x;
-                rightHit = true;
-            } else {
-                done = true;
-                whoLost = RIGHT_LOST;
+        // The last frame goes through the regular path so collisions and listeners are handled there
+        update();
 
-                if (leftPaddle) {
-                    leftScore++;
-                }
+        return quietFrames + 1;
+    }
 
-                // Notify the listeners of updates to the board
-                for (GameBoardListener listener : gameBoardListeners) {
-                    listener.gameBoardUpdated(this, leftHit, rightHit);
-                }
+    private void stepLeftPaddle(int frames) {
+        // Paddles don't affect the ball or the listeners during quiet frames. Once a frame leaves the
+        // paddle bit-for-bit unchanged (at rest, e.g. a side without a controller, or pinned against a
+        // wall) every further frame would too, so stop stepping it there
+        for (int i = 0; i < frames; i++) {
+            long y = Double.doubleToRawLongBits(leftPaddleY);
+            long velocity = Double.doubleToRawLongBits(leftPaddleVelocityY);
+
+            updateLeftPaddle();
+
+            if (Double.doubleToRawLongBits(leftPaddleY) == y && Double.doubleToRawLongBits(leftPaddleVelocityY) == velocity) {
+                return;
+            }
+        }
+    }
 
+    private void stepRightPaddle(int frames) {
+        for (int i = 0; i < frames; i++) {
+            long y = Double.doubleToRawLongBits(rightPaddleY);
+            long velocity = Double.doubleToRawLongBits(rightPaddleVelocityY);
+
+            updateRightPaddle();
+
+            if (Double.doubleToRawLongBits(rightPaddleY) == y && Double.doubleToRawLongBits(rightPaddleVelocityY) == velocity) {
                 return;
             }
         }
+    }
 
-        // Check if the ball hit a top/bottom wall
-        if (ballPosition.y <= 0 || ballPosition.y >= height - BALL_DIAMETER) {
-            ballVelocity.y = -ballVelocity.y;
+    private int framesUntilEvent() {
+        long frames = Integer.MAX_VALUE;
+
+        // Paddle lines (which also cover the left/right walls) and top/bottom walls
+        frames = Math.min(frames, framesInside(ballPosition.x, ballVelocity.x * DT, ballAcceleration.x * DT * DT, PADDLE_WIDTH, width - PADDLE_WIDTH - BALL_DIAMETER));
+        frames = Math.min(frames, framesInside(ballPosition.y, ballVelocity.y * DT, ballAcceleration.y * DT * DT, 0, height - BALL_DIAMETER));
+
+        // Keep one frame of margin against rounding in the closed form
+        return (int) Math.max(0, frames - 1);
+    }
+
+    private static long framesInside(double p, double v, double a, double lo, double hi) {
+        // Frames during which p stays strictly inside (lo, hi) while moving as v += a; p += v,
+        // i.e. p(t) = p + v * t + a * t * (t + 1) / 2
+        if (p <= lo || p >= hi) {
+            return 0;
         }
 
-        // Check if the ball hit a left/right wall
-        if (ballPosition.x <= 0 || ballPosition.x >= width - BALL_DIAMETER) {
-            ballVelocity.x = -ballVelocity.x;
+        double t = Math.min(firstRoot(a / 2, v + a / 2, p - lo), firstRoot(a / 2, v + a / 2, p - hi));
+
+        return t >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) Math.floor(t);
+    }
+
+    private static double firstRoot(double a, double b, double c) {
+        // Smallest non-negative root of a * t^2 + b * t + c = 0
+        if (a == 0) {
+            if (b == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            double t = -c / b;
+            return t >= 0 ? t : Double.POSITIVE_INFINITY;
         }
 
-        // Update the ball velocity and position
-        ballVelocity.x += ballAcceleration.x * DT;
-        ballVelocity.y += ballAcceleration.y * DT;
-        ballPosition.x += ballVelocity.x * DT;
-        ballPosition.y += ballVelocity.y * DT;
+        double discriminant = b * b - 4 * a * c;
 
-        // Notify the listeners of updates to the board
-        for (GameBoardListener listener : gameBoardListeners) {
-            listener.gameBoardUpdated(this, leftHit, rightHit);
+        if (discriminant < 0) {
+            return Double.POSITIVE_INFINITY;
         }
+
+        double sqrt = Math.sqrt(discriminant);
+        double t1 = (-b - sqrt) / (2 * a);
+        double t2 = (-b + sqrt) / (2 * a);
+        double first = Math.min(t1, t2);
+        double second = Math.max(t1, t2);
+
+        if (first >= 0) {
+            return first;
+        }
+
+        return second >= 0 ? second : Double.POSITIVE_INFINITY;
     }
 
     public void reset() {
@@ -335,8 +666,58 @@ public final class GameBoard {
         this.rightPaddleAccelerationY = rightPaddleAccelerationY;
     }
 
-    public void addGameBoardListener(GameBoardListener listener) {
-        gameBoardListeners.add(listener);
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    public synchronized void addGameBoardListener(GameBoardListener listener) {
+        GameBoardListener[] listeners = Arrays.copyOf(gameBoardListeners, gameBoardListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        gameBoardListeners = listeners;
+    }
+
+    public synchronized void removeGameBoardListener(GameBoardListener listener) {
+        gameBoardListeners = without(gameBoardListeners, listener);
+    }
+
+    public synchronized void addGameBoardBlockListener(GameBoardBlockListener listener) {
+        // Starts receiving with the first block after the next update
+        GameBoardBlockListener[] listeners = Arrays.copyOf(requestedBlockListeners, requestedBlockListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        requestedBlockListeners = listeners;
+        blockRequestsPending = true;
+    }
+
+    public synchronized void removeGameBoardBlockListener(GameBoardBlockListener listener) {
+        // Still gets what was buffered while it was registered, handed over on the next update
+        requestedBlockListeners = without(requestedBlockListeners, listener);
+        blockRequestsPending = true;
+    }
+
+    public synchronized void setEventBlockSize(int eventBlockSize) {
+        if (eventBlockSize < 1) {
+            throw new IllegalArgumentException("Event block size must be at least 1");
+        }
+
+        requestedEventBlockSize = eventBlockSize;
+        blockRequestsPending = true;
+    }
+
+    public void flushGameBoardEvents() {
+        // Hands a partial block over on the next update, from the simulating thread
+        blockRequestsPending = true;
+    }
+
+    private static <T> T[] without(T[] listeners, T listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                T[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+                return remaining;
+            }
+        }
+
+        return listeners;
     }
 
     public boolean isDone() {
@@ -351,6 +732,14 @@ public final class GameBoard {
         return whoLost;
     }
 
+    public int getLeftHits() {
+        return leftHits;
+    }
+
+    public int getRightHits() {
+        return rightHits;
+    }
+
     public int getLeftScore() {
         return leftScore;
     }
@@ -0,0 +1,17 @@
+
+/**
+ *
+ * @author Andres
+ */
+public interface GameBoardBlockListener {
+
+    // Bits of each entry in the events array
+    int LEFT_HIT = 1;
+    int RIGHT_HIT = 2;
+    int DONE = 4;
+    int LEFT_LOST = 8;
+    int RIGHT_LOST = 16;
+
+    // events[0..count) holds one entry per board update, oldest first. The array is reused by the board
+    void gameBoardFramesUpdated(GameBoard board, int[] events, int count);
+}
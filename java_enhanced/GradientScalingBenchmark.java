@@ -0,0 +1,116 @@
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+
+/**
+ *
+ * @author Andres
+ */
+public class GradientScalingBenchmark {
+
+    public static void main(String[] args) {
+        int numIterations = 20;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        int[] sampleCounts = {1000, 4000, 16000, 64000};
+        long seed = 1;
+
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+
+            if (option.length != 2) {
+                printUsage();
+            } else if (option[0].equals("iterations")) {
+                numIterations = Integer.parseInt(option[1]);
+            } else if (option[0].equals("seed")) {
+                seed = Long.parseLong(option[1]);
+            } else {
+                printUsage();
+            }
+        }
+
+        System.out.printf("Available processors: %d\n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %-9s %-9s %-14s %-9s %-10s\n", "Trainer", "Samples", "Threads", "ms/Iteration", "Speedup", "Identical");
+
+        // Run everything twice so the second round is measured with a warm JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            for (int samples : sampleCounts) {
+                SplittableRandom random = new SplittableRandom(seed);
+                BasicNetwork network = EncogQFunction.createQNetwork(random.split());
+                ReplayDataSet data = createData(network, samples, random);
+
+                for (boolean sharded : new boolean[]{true, false}) {
+                    double[] referenceWeights = null;
+                    double referenceMillis = 0;
+
+                    for (int threads : threadCounts) {
+                        // Every run starts from the same weights, so identical gradients end in identical weights
+                        BasicNetwork copy = (BasicNetwork) network.clone();
+                        long start = System.nanoTime();
+
+                        if (sharded) {
+                            ShardedRPROP trainer = new ShardedRPROP(copy, threads);
+
+                            for (int i = 0; i < numIterations; i++) {
+                                trainer.iteration(data);
+                            }
+
+                            trainer.shutdown();
+                        } else {
+                            ResilientPropagation trainer = new ResilientPropagation(copy, data);
+                            trainer.setThreadCount(threads);
+
+                            for (int i = 0; i < numIterations; i++) {
+                                trainer.iteration();
+                            }
+
+                            trainer.finishTraining();
+                        }
+
+                        double millis = (System.nanoTime() - start) / 1e6 / numIterations;
+                        double[] weights = copy.getFlat().getWeights();
+
+                        if (referenceWeights == null) {
+                            referenceWeights = weights.clone();
+                            referenceMillis = millis;
+                        }
+
+                        if (print) {
+                            System.out.printf("%-8s %-9d %-9d %-14.3f %-9.2f %-10s\n", sharded ? "sharded" : "encog", samples, threads, millis, referenceMillis / millis, Arrays.equals(weights, referenceWeights) ? "yes" : "no");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static ReplayDataSet createData(BasicNetwork network, int samples, SplittableRandom random) {
+        ReplayBuffer buffer = new ReplayBuffer(samples, QPaddleController.STATE_SIZE);
+        double[] state = new double[QPaddleController.STATE_SIZE];
+        double[] nextState = new double[QPaddleController.STATE_SIZE];
+
+        for (int i = 0; i < samples; i++) {
+            // Roughly the ranges of a 300 x 200 board
+            for (int f = 0; f < state.length; f++) {
+                state[f] = random.nextDouble(-5, 200);
+                nextState[f] = state[f] + random.nextDouble(-3, 3);
+            }
+
+            buffer.add(state, random.nextInt(QPaddleController.getNumActions()), random.nextDouble() < 0.01 ? 10 : 0, nextState, random.nextDouble() < 0.005);
+        }
+
+        ReplayDataSet data = new ReplayDataSet(buffer, network, QPaddleController.getValidActions());
+        data.useAll();
+        data.computeTargets(network, 0.9);
+
+        return data;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: GradientScalingBenchmark [iterations=<n>] [seed=<n>]");
+        System.exit(1);
+    }
+}
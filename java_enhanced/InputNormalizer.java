@@ -0,0 +1,136 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Andres
+ */
+public final class InputNormalizer {
+
+    // Format: size, number of samples, then every feature's mean and sum of squared deviations
+    private static final int VERSION = 1;
+
+    // Keeps the scale finite for a feature that hasn't varied yet
+    private static final double EPSILON = 1e-8;
+
+    // Running mean and variance of every feature (Welford), and the scale they give
+    private final int size;
+    private long count;
+    private final double[] means;
+    private final double[] squaredDeviations;
+    private final double[] scales;
+
+    // A frozen normalizer ignores update(), so evaluation sees the same inputs on every run
+    private boolean frozen;
+
+    public InputNormalizer(int size) {
+        this.size = size;
+
+        means = new double[size];
+        squaredDeviations = new double[size];
+        scales = new double[size];
+
+        // The identity until there are samples
+        Arrays.fill(scales, 1);
+    }
+
+    public void update(double[] input) {
+        if (frozen) {
+            return;
+        }
+
+        count++;
+
+        for (int i = 0; i < size; i++) {
+            double delta = input[i] - means[i];
+
+            means[i] += delta / count;
+            squaredDeviations[i] += delta * (input[i] - means[i]);
+            updateScale(i);
+        }
+    }
+
+    private void updateScale(int i) {
+        if (count > 1) {
+            scales[i] = 1 / Math.sqrt(squaredDeviations[i] / (count - 1) + EPSILON);
+        }
+    }
+
+    public void normalize(double[] values, int offset) {
+        // In place, the first size values from offset (a trailing action input is left alone)
+        for (int i = 0; i < size; i++) {
+            values[offset + i] = (values[offset + i] - means[i]) * scales[i];
+        }
+    }
+
+    public InputNormalizer copy() {
+        InputNormalizer copy = new InputNormalizer(size);
+
+        copy.count = count;
+        System.arraycopy(means, 0, copy.means, 0, size);
+        System.arraycopy(squaredDeviations, 0, copy.squaredDeviations, 0, size);
+        System.arraycopy(scales, 0, copy.scales, 0, size);
+        copy.frozen = frozen;
+
+        return copy;
+    }
+
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeLong(count);
+
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(means[i]);
+                out.writeDouble(squaredDeviations[i]);
+            }
+        }
+    }
+
+    public static InputNormalizer load(File file) throws IOException {
+        // Loaded frozen, training has to ask for more updates explicitly
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Cannot read input normalization " + file + ", unknown version");
+            }
+
+            InputNormalizer normalizer = new InputNormalizer(in.readInt());
+            normalizer.count = in.readLong();
+
+            for (int i = 0; i < normalizer.size; i++) {
+                normalizer.means[i] = in.readDouble();
+                normalizer.squaredDeviations[i] = in.readDouble();
+                normalizer.updateScale(i);
+            }
+
+            normalizer.frozen = true;
+
+            return normalizer;
+        }
+    }
+}
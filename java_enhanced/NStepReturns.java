@@ -0,0 +1,97 @@
+
+/**
+ *
+ * @author Andres
+ */
+public final class NStepReturns {
+
+    public interface Sink {
+
+        void add(double[] state, int action, double reward, double[] nextState, boolean done);
+    }
+
+    // Turns one-step transitions into n-step ones: the reward becomes the discounted sum of the next
+    // n rewards and the next state the one n steps later, so its targets bootstrap with gamma^n.
+    // Only the last n transitions are kept, each one's return grows as rewards arrive and it leaves
+    // the window once complete, or early (and done) when the episode ends
+    private final int steps;
+    private final double gamma;
+    private final int stateSize;
+
+    // Circular window, first is the oldest pending transition
+    private final double[] states;
+    private final int[] actions;
+    private final double[] returns;
+    private final double[] discounts;
+    private int first;
+    private int count;
+
+    // Scratch buffer handed to the sink
+    private final double[] state;
+
+    public NStepReturns(int steps, double gamma, int stateSize) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Number of return steps must be at least 1");
+        }
+
+        this.steps = steps;
+        this.gamma = gamma;
+        this.stateSize = stateSize;
+
+        states = new double[steps * stateSize];
+        actions = new int[steps];
+        returns = new double[steps];
+        discounts = new double[steps];
+
+        state = new double[stateSize];
+    }
+
+    public void add(double[] state, int action, double reward, double[] nextState, boolean done, Sink sink) {
+        int slot = (first + count) % steps;
+
+        System.arraycopy(state, 0, states, slot * stateSize, stateSize);
+        actions[slot] = action;
+        returns[slot] = 0;
+        discounts[slot] = 1;
+        count++;
+
+        // The new reward counts for every pending transition, discounted by how long ago it started
+        for (int i = 0; i < count; i++) {
+            int s = (first + i) % steps;
+
+            returns[s] += discounts[s] * reward;
+            discounts[s] *= gamma;
+        }
+
+        if (done) {
+            // Nothing comes after the end, every pending return is already complete
+            while (count > 0) {
+                emit(nextState, true, sink);
+            }
+        } else if (count == steps) {
+            emit(nextState, false, sink);
+        }
+    }
+
+    private void emit(double[] nextState, boolean done, Sink sink) {
+        System.arraycopy(states, first * stateSize, state, 0, stateSize);
+        sink.add(state, actions[first], returns[first], nextState, done);
+
+        first = (first + 1) % steps;
+        count--;
+    }
+
+    public void clear() {
+        // Drops transitions of an episode that was cut short, they have no complete return
+        first = 0;
+        count = 0;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public double getBootstrapDiscount() {
+        return Math.pow(gamma, steps);
+    }
+}
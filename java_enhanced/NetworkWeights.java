@@ -0,0 +1,39 @@
+
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ *
+ * @author Andres
+ */
+public final class NetworkWeights {
+
+    private NetworkWeights() {
+    }
+
+    public static void copy(BasicNetwork from, BasicNetwork to) {
+        // Straight into the flat weight array the network computes with, nothing is allocated
+        double[] source = from.getFlat().getWeights();
+        double[] target = to.getFlat().getWeights();
+
+        checkSameLayout(source, target);
+        System.arraycopy(source, 0, target, 0, source.length);
+    }
+
+    public static void blend(BasicNetwork from, BasicNetwork to, double tau) {
+        // Polyak averaging: to = tau * from + (1 - tau) * to
+        double[] source = from.getFlat().getWeights();
+        double[] target = to.getFlat().getWeights();
+
+        checkSameLayout(source, target);
+
+        for (int i = 0; i < source.length; i++) {
+            target[i] = tau * source[i] + (1 - tau) * target[i];
+        }
+    }
+
+    private static void checkSameLayout(double[] source, double[] target) {
+        if (source.length != target.length) {
+            throw new IllegalArgumentException("Cannot copy weights between networks with a different structure");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ *
+ * @author Andres
+ */
+public final class OneStepQFunction implements QFunction {
+
+    // One-step Q-learning in front of a backend that only knows train(): every transition becomes
+    // the target reward + discount * max Q(nextState), with Q as it is when the transition arrives,
+    // and every full batch of targets is one train() call. The discount is gamma, or gamma^n when
+    // an NStepQFunction in front hands over n-step returns
+    private final QFunction backend;
+    private final double discount;
+
+    private final QBatch batch;
+    private double error;
+    private int numErrors;
+
+    // Scratch buffer for the next state's Q-values
+    private final double[] qValues;
+
+    public OneStepQFunction(QFunction backend, double discount, int batchSize) {
+        this.backend = backend;
+        this.discount = discount;
+
+        batch = new QBatch(batchSize, QPaddleController.STATE_SIZE);
+        qValues = new double[QPaddleController.getNumActions()];
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        backend.evaluate(states, actions, out, count);
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        backend.computeQValues(state, output);
+    }
+
+    @Override
+    public double train(QBatch targets) {
+        return backend.train(targets);
+    }
+
+    @Override
+    public int getVersion() {
+        return backend.getVersion();
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        double target = reward;
+
+        if (!done) {
+            backend.computeQValues(nextState, qValues);
+            target += discount * max(qValues);
+        }
+
+        batch.add(state, action, target);
+
+        if (batch.isFull()) {
+            trainBatch();
+        }
+    }
+
+    @Override
+    public double commit() {
+        // Full batches were trained on as they filled up, the rest goes now
+        if (batch.size() > 0) {
+            trainBatch();
+        }
+
+        double meanError = numErrors > 0 ? error / numErrors : Double.NaN;
+        error = 0;
+        numErrors = 0;
+
+        return meanError;
+    }
+
+    private void trainBatch() {
+        error += backend.train(batch);
+        numErrors++;
+        batch.clear();
+    }
+
+    private static double max(double[] values) {
+        double max = values[0];
+
+        for (int i = 1; i < values.length; i++) {
+            max = Math.max(max, values[i]);
+        }
+
+        return max;
+    }
+
+    public int getBatchSize() {
+        return batch.getCapacity();
+    }
+
+    public QFunction getBackend() {
+        return backend;
+    }
+}
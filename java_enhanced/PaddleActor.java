@@ -0,0 +1,82 @@
+
+/**
+ *
+ * @author Andres
+ */
+public final class PaddleActor implements Runnable {
+
+    private final GameBoard board;
+    private final QPaddleController controller;
+    private final int episodesPerBatch;
+
+    private volatile boolean running;
+
+    // Written only by the actor's own thread at the end of every episode, read by whoever reports
+    private volatile long steps;
+    private volatile long episodes;
+    private volatile long activeNanos;
+
+    public PaddleActor(GameBoard board, QPaddleController controller, int episodesPerBatch) {
+        this.board = board;
+        this.controller = controller;
+        this.episodesPerBatch = episodesPerBatch;
+
+        board.addGameBoardListener(controller);
+        running = true;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+
+        // Counted locally and published once per episode, so the frame loop touches no shared memory
+        long localSteps = 0;
+        long localEpisodes = 0;
+
+        controller.startTrainingEpisode();
+
+        while (running) {
+            localSteps += board.update(controller.getActionRepeat());
+
+            if (board.isDone()) {
+                // Prepare board and controller for next episode
+                board.reset();
+                controller.startTrainingEpisode();
+                localEpisodes++;
+
+                // Hand the transitions over to the learner, this only waits when the learner is
+                // AsyncLearner.MAX_PENDING_BATCHES behind
+                if (localEpisodes % episodesPerBatch == 0) {
+                    controller.commitSamples();
+                }
+
+                steps = localSteps;
+                episodes = localEpisodes;
+                activeNanos = System.nanoTime() - start;
+            }
+        }
+
+        controller.commitSamples();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    public double getStepsPerSecond() {
+        long nanos = activeNanos;
+        return nanos > 0 ? steps / (nanos / 1e9) : 0;
+    }
+
+    public QPaddleController getController() {
+        return controller;
+    }
+}
@@ -3,8 +3,13 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
 import javax.swing.JFrame;
 import javax.swing.Timer;
 
@@ -54,79 +59,233 @@ public class PongUI extends JFrame {
         pnlBoard.repaint();
     }
 
-    public static void main(String[] args) throws InterruptedException {
-        if (args.length != 3) {
-            System.out.println("Usage: PongUI <train | play> <readNNFile | none> <writeNNFile>");
-            System.exit(1);
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 3) {
+            printUsage();
         }
 
+        Map<String, String> options = parseOptions(args, 3);
+
+        // Every random stream in the run is split from this one, so a fixed seed reproduces the run
+        SplittableRandom masterRandom = options.containsKey("seed") ? new SplittableRandom(Long.parseLong(options.get("seed"))) : new SplittableRandom();
+
+        // Frames each chosen action is held for (the controller decides once per repeat)
+        int actionRepeat = options.containsKey("repeat") ? Integer.parseInt(options.get("repeat")) : 1;
+
         if (args[0].equals("train")) {
-            GameBoard board = new GameBoard(300, 200, true, false);
+            GameBoard board = new GameBoard(300, 200, true, false, masterRandom.split());
 
             // Initialize training parameters
-            int maxNumEpisodes = 40000;
+            int maxNumEpisodes = options.containsKey("episodes") ? Integer.parseInt(options.get("episodes")) : 40000;
             int episodesPerBatch = 10;
             double maxEpsilon = 0.9;
             double minEpsilon = 0;
             int epsilonEpisodes = 10000;
             double gamma = 0.9;
             int maxNumHitsPerEpisode = 10;
-            int nnIterations = 1;
+            int nnIterations = options.containsKey("iterations") ? Integer.parseInt(options.get("iterations")) : 1;
             int batchNNBackupFrequency = 1000;
             
-            // Create controllers
-            QPaddleController ai = new QPaddleController(board, PaddleController.LEFT, maxEpsilon, gamma, nnIterations, (args[1].equals("none") ? null : args[1]), true);
+            // The network learns from the controller's transitions through a replay buffer
+            SplittableRandom aiRandom = masterRandom.split();
+            ReplayQFunction replay = ReplayQFunction.load(args[1].equals("none") ? null : args[1], gamma, nnIterations, aiRandom);
+            QLearner learner = replay.getLearner();
+
+            // iRPROP+ step sizes carry over from batch to batch (and from the run that wrote readNNFile) unless rprop=cold
+            if ("cold".equals(options.get("rprop"))) {
+                learner.setKeepRPROPState(false);
+            } else if (!args[1].equals("none") && new File(args[1] + ".rprop").exists()) {
+                learner.loadRPROPState(new File(args[1] + ".rprop"));
+            }
+
+            // Sample transitions by TD error, e.g. priority=0.6 (beta=<b> sets the importance-sampling correction)
+            if (options.containsKey("priority")) {
+                double beta = options.containsKey("beta") ? Double.parseDouble(options.get("beta")) : PrioritizedReplayBuffer.DEFAULT_BETA;
+                learner.enablePrioritizedReplay(Double.parseDouble(options.get("priority")), beta);
+            }
+
+            // Bootstrap targets from a frozen copy of the network, synced every target=<n> batches or softly with tau=<t>
+            String targetMode = "none";
+
+            if (options.containsKey("target")) {
+                learner.enableTargetNetwork(Integer.parseInt(options.get("target")));
+                targetMode = "sync every " + options.get("target") + " batches";
+            } else if (options.containsKey("tau")) {
+                learner.enableSoftTargetNetwork(Double.parseDouble(options.get("tau")));
+                targetMode = "Polyak tau " + options.get("tau");
+            }
+
+            // Double DQN: the online network picks the next action and the target network scores it
+            if (Boolean.parseBoolean(options.get("double"))) {
+                if (!hasLaggingTarget(options)) {
+                    System.out.println("double=true needs a target network that lags behind: target=<batches> (at least 2 with RPROP) or tau=<t> (below 1 with RPROP)");
+                    printUsage();
+                }
+
+                learner.setDoubleDQN(true);
+                targetMode += ", double DQN";
+            }
+
+            // Learn from n-step returns instead of one-step targets, e.g. nstep=10
+            int returnSteps = options.containsKey("nstep") ? Integer.parseInt(options.get("nstep")) : 1;
+            learner.setReturnSteps(returnSteps);
+
+            // Scale every input by running mean and variance, kept in <writeNNFile>.norm next to the network
+            if (Boolean.parseBoolean(options.get("normalize"))) {
+                learner.enableInputNormalization();
+            }
+
+            String inputs = learner.getNormalizer() != null ? "normalized" : "raw";
+
+            // Train with small gradient steps as transitions arrive instead of RPROP on every batch, e.g.
+            // optimizer=adam lr=0.001 minibatch=64 steps=0.25 (one step every 4 transitions)
+            String optimizer = options.containsKey("optimizer") ? options.get("optimizer") : "rprop";
+
+            if (!optimizer.equals("rprop")) {
+                double learningRate = options.containsKey("lr") ? Double.parseDouble(options.get("lr")) : MinibatchTrainer.DEFAULT_LEARNING_RATE;
+                int minibatchSize = options.containsKey("minibatch") ? Integer.parseInt(options.get("minibatch")) : 64;
+                double stepsPerTransition = options.containsKey("steps") ? Double.parseDouble(options.get("steps")) : 1;
+
+                learner.enableMinibatchTraining(parseOptimizer(optimizer), learningRate, minibatchSize, stepsPerTransition);
+            }
+
+            // Mean miss distance that counts as trained, for comparing how fast each setup gets there
+            double threshold = options.containsKey("threshold") ? Double.parseDouble(options.get("threshold")) : Double.NaN;
+            int thresholdEpisode = -1;
+            double thresholdSeconds = Double.NaN;
+
+            // A single RPROP thread keeps the gradient sums in a fixed order, so seeded runs repeat exactly
+            if (options.containsKey("seed")) {
+                learner.setTrainingThreadCount(1);
+            }
+
+            // Or RPROP on our own pool of gradient workers, which repeats exactly with any number of them
+            if (options.containsKey("workers")) {
+                learner.setGradientWorkers(Integer.parseInt(options.get("workers")));
+            }
+
+            // N actor threads, each with its own board and epsilon, feeding one learner thread
+            if (options.containsKey("actors")) {
+                trainWithActors(board, learner, Integer.parseInt(options.get("actors")), maxNumEpisodes, episodesPerBatch, maxNumHitsPerEpisode, actionRepeat, returnSteps, args[2], masterRandom);
+                System.exit(0);
+            }
+
+            // Train on a background thread while the board keeps playing with the last published network
+            AsyncLearner asyncLearner = null;
+            QFunction qFunction = replay;
+
+            if (Boolean.parseBoolean(options.get("async"))) {
+                asyncLearner = new AsyncLearner(learner);
+                qFunction = new ActorQFunction(asyncLearner);
+                asyncLearner.start();
+            }
+
+            // Create controllers: n-step returns are put together on the controller's side of the learner
+            if (returnSteps > 1) {
+                qFunction = new NStepQFunction(qFunction, returnSteps, gamma);
+            }
+
+            QPaddleController ai = new QPaddleController(board, PaddleController.LEFT, maxEpsilon, qFunction, true, aiRandom);
             ai.setMaxNumHits(maxNumHitsPerEpisode);
+            ai.setActionRepeat(actionRepeat);
             ai.startTrainingEpisode();
             board.addGameBoardListener(ai);
 
             // Save the neural network before training
-            ai.commitNNToFile(args[2] + "_0");
+            save(replay, asyncLearner, args[2] + "_0");
 
             /* System.out.printf("%-7s %-7s %-8s %-11s %-9s %-8s %-8s %-10s %-18s\n", "Batch", "Epsilon", "NN Error", "Median Hits", "Mean Hits", "Min Hits", "Max Hits", "% Above 25", "Mean Miss Distance"); */
-            System.out.printf("%-7s %-7s %-8s %-18s\n", "Batch", "Epsilon", "NN Error", "Mean Miss Distance");
+            System.out.printf("%-7s %-7s %-8s %-18s %-6s %-6s\n", "Batch", "Epsilon", "NN Error", "Mean Miss Distance", "Sim %", "Learn %");
 
             // Keep track of the best batch
             int bestBatch;
             double bestMissDistance = Double.POSITIVE_INFINITY;
             
             // Test before training
-            double[] testResults = testQPaddleController(board, args[2] + "_0", 75);
-            System.out.printf("%-7d %-7.3f %-8.3f %-18.3f\n", 0, ai.getEpsilon(), Double.NaN, testResults[5]);
+            double[] testResults = testQPaddleController(board, args[2] + "_0", 75, actionRepeat, masterRandom.split());
+            System.out.printf("%-7d %-7.3f %-8.3f %-18.3f %-6s %-6s\n", 0, ai.getEpsilon(), Double.NaN, testResults[5], "-", "-");
 
             // Save best network found so far
-            ai.commitNNToFile(args[2] + "_best");
+            save(replay, asyncLearner, args[2] + "_best");
             bestBatch = 0;
             bestMissDistance = testResults[5];
             
             int batch = 1;
+
+            // Share of each batch's wall time spent simulating and training, to see how much the two overlap
+            long batchStart = System.nanoTime();
+            long simNanos = 0;
+            long learnNanos = 0;
+            long learnerBusyNanos = asyncLearner != null ? asyncLearner.getBusyNanos() : 0;
+
+            // Mini-batch optimizers step inside addTransition(), in the middle of the simulation
+            long minibatchNanos = learner.getMinibatchNanos();
+
+            // Training wall time leaves out the evaluations, which cost the same whatever trains
+            long trainingStart = System.nanoTime();
+            long evaluationNanos = 0;
             
             for (int curEpisode = 1; curEpisode <= maxNumEpisodes; curEpisode++) {
+                long episodeStart = System.nanoTime();
+
                 while (true) {
-                    board.update();
+                    board.update(actionRepeat);
 
                     if (board.isDone()) {
+                        simNanos += System.nanoTime() - episodeStart;
+
                         // Prepare board and controller for next episode
                         board.reset();
                         ai.startTrainingEpisode();
 
                         // Commit batch to neural network if necessary
                         if (curEpisode % episodesPerBatch == 0) {
-                            double nnError = ai.commitSamplesToNN();
-                            ai.commitNNToFile(args[2]);
+                            long commitStart = System.nanoTime();
+                            double nnError = ai.commitSamples();
+
+                            if (asyncLearner == null) {
+                                long stepNanos = learner.getMinibatchNanos() - minibatchNanos;
+                                minibatchNanos += stepNanos;
+
+                                learnNanos = System.nanoTime() - commitStart + stepNanos;
+                                simNanos -= stepNanos;
+                            }
 
-                            testResults = testQPaddleController(board, args[2], 75);
-                            System.out.printf("%-7d %-7.3f %-8.3f %-18.3f\n", batch, ai.getEpsilon(), nnError, testResults[5]);
+                            long evaluationStart = System.nanoTime();
+                            save(replay, asyncLearner, args[2]);
+                            learner.saveRPROPState(new File(args[2] + ".rprop"));
+
+                            testResults = testQPaddleController(board, args[2], 75, actionRepeat, masterRandom.split());
+                            evaluationNanos += System.nanoTime() - evaluationStart;
+
+                            long batchEnd = System.nanoTime();
+                            long batchNanos = batchEnd - batchStart;
+
+                            if (asyncLearner != null) {
+                                // Sampled at the end of the batch, so both shares cover the same span of wall time
+                                learnNanos = asyncLearner.getBusyNanos() - learnerBusyNanos;
+                                learnerBusyNanos += learnNanos;
+                            }
+
+                            System.out.printf("%-7d %-7.3f %-8.3f %-18.3f %-6.1f %-6.1f\n", batch, ai.getEpsilon(), nnError, testResults[5], 100.0 * simNanos / batchNanos, 100.0 * learnNanos / batchNanos);
+
+                            batchStart = batchEnd;
+                            simNanos = 0;
                             
+                            if (thresholdEpisode < 0 && testResults[5] <= threshold) {
+                                thresholdEpisode = curEpisode;
+                                thresholdSeconds = (System.nanoTime() - trainingStart - evaluationNanos) / 1e9;
+                            }
+
                             if (testResults[5] < bestMissDistance) {
                                 // Save best network found so far
-                                ai.commitNNToFile(args[2] + "_best");
+                                save(replay, asyncLearner, args[2] + "_best");
                                 bestBatch = batch;
                                 bestMissDistance = testResults[5];
                             }
                             
                             if (batch % batchNNBackupFrequency == 0) {
-                                ai.commitNNToFile(args[2] + "_batch_" + batch);
+                                save(replay, asyncLearner, args[2] + "_batch_" + batch);
                             }
 
                             batch++;
@@ -144,8 +303,26 @@ public class PongUI extends JFrame {
                 }
             }
             
+            if (asyncLearner != null) {
+                asyncLearner.stop();
+            }
+
             System.out.println();
             System.out.println("Best neural network found in batch " + bestBatch + " (saved to " + args[2] + "_best)");
+
+            if (learner.isMinibatchTraining()) {
+                double trainingSeconds = (System.nanoTime() - trainingStart - evaluationNanos) / 1e9;
+                System.out.printf("%d gradient steps, %.0f per second of training\n", learner.getNumGradientSteps(), learner.getNumGradientSteps() / trainingSeconds);
+            }
+
+            if (!Double.isNaN(threshold)) {
+                if (thresholdEpisode > 0) {
+                    System.out.printf("Episodes to a mean miss distance of %s: %d in %.1f s of training (target network: %s, optimizer: %s, returns: %d-step, inputs: %s)\n", threshold, thresholdEpisode, thresholdSeconds, targetMode, optimizer, returnSteps, inputs);
+                } else {
+                    System.out.println("Mean miss distance of " + threshold + " not reached in " + maxNumEpisodes + " episodes (target network: " + targetMode + ", optimizer: " + optimizer + ", returns: " + returnSteps + "-step, inputs: " + inputs + ")");
+                }
+            }
+
             System.out.println();
             
             System.exit(0);
@@ -153,20 +330,38 @@ public class PongUI extends JFrame {
             // Acceleration: http://stackoverflow.com/a/13832805
             System.setProperty("sun.java2d.opengl", "true");
 
-            GameBoard board = new GameBoard(300, 200, true, true);
+            GameBoard board = new GameBoard(300, 200, true, true, masterRandom.split());
             PongUI ui = new PongUI(board, 350, 270);
 
             // Create controllers
-            QPaddleController ai = new QPaddleController(board, PaddleController.LEFT, 0, 0, 0, (args[1].equals("none") ? null : args[1]), false);
+            SplittableRandom aiRandom = masterRandom.split();
+            QuantizedNetwork.Precision precision = parsePrecision(options.get("precision"));
+            QFunction qFunction;
+
+            if (args[1].equals("none")) {
+                EncogQFunction network = new EncogQFunction(EncogQFunction.createQNetwork(aiRandom));
+                network.setInferencePrecision(precision);
+                qFunction = network;
+            } else {
+                qFunction = EncogQFunction.load(args[1], precision);
+            }
+
+            // Reuse Q-values of recently seen states, e.g. cache=65536 entries
+            if (options.containsKey("cache")) {
+                qFunction = new CachedQFunction(qFunction, new QValueCache(Integer.parseInt(options.get("cache")), QPaddleController.getNumActions(), QValueCache.defaultResolution()));
+            }
+
+            QPaddleController ai = new QPaddleController(board, PaddleController.LEFT, 0, qFunction, false, aiRandom);
             ai.setMaxNumHits(0);
+            ai.setActionRepeat(actionRepeat);
             board.addGameBoardListener(ai);
 
             HumanPaddleController human = new HumanPaddleController(board, PaddleController.RIGHT);
             ui.addKeyListener(human);
 
-            // Start an animation loop
-            Timer animator = new Timer(10, (ActionEvent ae) -> {
-                board.update();
+            // Start an animation loop (one tick per decision, so the game runs at the same speed for any repeat)
+            Timer animator = new Timer(10 * actionRepeat, (ActionEvent ae) -> {
+                board.update(ai.getActionRepeat());
                 ui.revalidate();
                 ui.repaint();
 
@@ -188,12 +383,195 @@ public class PongUI extends JFrame {
             animator.start();
 
         } else {
-            System.out.println("Usage: PongUI <train | play> <readNNFile | none> <writeNNFile>");
-            System.exit(1);
+            printUsage();
+        }
+    }
+
+    private static void save(ReplayQFunction replay, AsyncLearner asyncLearner, String filename) throws IOException {
+        // What the board plays with: the learner's network, or the last one an async learner published
+        if (asyncLearner != null) {
+            asyncLearner.save(filename);
+        } else {
+            replay.save(filename);
         }
     }
 
-    public static double[] testQPaddleController(GameBoard board, String nnFileName, int numEpisodes) {
+    private static void trainWithActors(GameBoard board, QLearner learner, int numActors, int maxNumEpisodes, int episodesPerBatch, int maxNumHitsPerEpisode, int actionRepeat, int returnSteps, String writeNNFileName, SplittableRandom masterRandom) throws InterruptedException, IOException {
+        AsyncLearner asyncLearner = new AsyncLearner(learner);
+        asyncLearner.start();
+
+        PaddleActor[] actors = new PaddleActor[numActors];
+        Thread[] actorThreads = new Thread[numActors];
+
+        for (int i = 0; i < numActors; i++) {
+            // Fixed per-actor exploration from 0.4 down to 0.4^8, so some actors explore while others refine
+            double epsilon = numActors == 1 ? 0.4 : Math.pow(0.4, 1 + 7.0 * i / (numActors - 1));
+
+            GameBoard actorBoard = new GameBoard(300, 200, true, false, masterRandom.split());
+            QFunction actorQFunction = new ActorQFunction(asyncLearner);
+
+            if (returnSteps > 1) {
+                actorQFunction = new NStepQFunction(actorQFunction, returnSteps, learner.getGamma());
+            }
+
+            QPaddleController actorController = new QPaddleController(actorBoard, PaddleController.LEFT, epsilon, actorQFunction, true, masterRandom.split());
+            actorController.setMaxNumHits(maxNumHitsPerEpisode);
+            actorController.setActionRepeat(actionRepeat);
+
+            actors[i] = new PaddleActor(actorBoard, actorController, episodesPerBatch);
+            actorThreads[i] = new Thread(actors[i], "PaddleActor-" + i);
+            actorThreads[i].start();
+        }
+
+        System.out.printf("%-7s %-9s %-8s %-18s %-14s %-14s %-14s %-7s\n", "Round", "Episodes", "NN Error", "Mean Miss Distance", "Steps/sec", "Min Actor", "Max Actor", "Learn %");
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long lastBusyNanos = asyncLearner.getBusyNanos();
+        long totalEpisodes = 0;
+        double bestMissDistance = Double.POSITIVE_INFINITY;
+        boolean actorDied = false;
+
+        while (totalEpisodes < maxNumEpisodes && !actorDied) {
+            Thread.sleep(5000);
+
+            // A dead actor's episodes stop counting, so without this the loop could never end
+            for (Thread actorThread : actorThreads) {
+                actorDied |= !actorThread.isAlive();
+            }
+
+            // Evaluate the latest published network while the actors keep playing
+            asyncLearner.save(writeNNFileName);
+            learner.saveRPROPState(new File(writeNNFileName + ".rprop"));
+            double[] testResults = testQPaddleController(board, writeNNFileName, 75, actionRepeat, masterRandom.split());
+
+            if (testResults[5] < bestMissDistance) {
+                asyncLearner.save(writeNNFileName + "_best");
+                bestMissDistance = testResults[5];
+            }
+
+            totalEpisodes = 0;
+            double totalStepsPerSecond = 0;
+            double minStepsPerSecond = Double.POSITIVE_INFINITY;
+            double maxStepsPerSecond = 0;
+
+            for (PaddleActor actor : actors) {
+                totalEpisodes += actor.getEpisodes();
+                totalStepsPerSecond += actor.getStepsPerSecond();
+                minStepsPerSecond = Math.min(minStepsPerSecond, actor.getStepsPerSecond());
+                maxStepsPerSecond = Math.max(maxStepsPerSecond, actor.getStepsPerSecond());
+            }
+
+            long now = System.nanoTime();
+            long busyNanos = asyncLearner.getBusyNanos();
+
+            System.out.printf("%-7d %-9d %-8.3f %-18.3f %-14.0f %-14.0f %-14.0f %-7.1f\n", asyncLearner.getPublishedVersion(), totalEpisodes, asyncLearner.getLastError(), testResults[5], totalStepsPerSecond, minStepsPerSecond, maxStepsPerSecond, 100.0 * (busyNanos - lastBusyNanos) / (now - lastReport));
+
+            lastReport = now;
+            lastBusyNanos = busyNanos;
+        }
+
+        for (int i = 0; i < numActors; i++) {
+            actors[i].stop();
+            actorThreads[i].join();
+        }
+
+        asyncLearner.stop();
+
+        if (actorDied) {
+            throw new IllegalStateException("An actor thread died, see its exception above");
+        }
+
+        // Per-actor throughput: with one core per actor these should all be about the same
+        System.out.println();
+        System.out.printf("%-7s %-9s %-9s %-12s %-14s\n", "Actor", "Epsilon", "Episodes", "Steps", "Steps/sec");
+
+        for (int i = 0; i < numActors; i++) {
+            System.out.printf("%-7d %-9.5f %-9d %-12d %-14.0f\n", i, actors[i].getController().getEpsilon(), actors[i].getEpisodes(), actors[i].getSteps(), actors[i].getStepsPerSecond());
+        }
+
+        System.out.println();
+        System.out.println("Trained for " + (System.nanoTime() - start) / 1000000000 + " s with " + numActors + " actors (best network saved to " + writeNNFileName + "_best)");
+        System.out.println();
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: PongUI <train | play> <readNNFile | none> <writeNNFile> [seed=<n>] [repeat=<k>] [priority=<alpha>] [beta=<b>] [target=<batches> | tau=<t>] [double=true] [nstep=<n>] [normalize=true] [threshold=<missDistance>] [episodes=<n>] [iterations=<n>] [rprop=<warm | cold>] [optimizer=<rprop | adam | rmsprop>] [lr=<rate>] [minibatch=<size>] [steps=<perTransition>] [workers=<n>] [async=true] [actors=<n>] [precision=<double | float32>] [cache=<entries>]");
+        System.exit(1);
+    }
+
+    private static boolean hasLaggingTarget(Map<String, String> options) {
+        // RPROP computes a batch's targets before training on it, so a target synced after every
+        // batch (target=1 or tau=1) is identical to nn by then and double DQN would be plain DQN.
+        // Mini-batch optimizers step between syncs, so any target network lags for them
+        boolean rprop = !options.containsKey("optimizer") || options.get("optimizer").equals("rprop");
+
+        if (options.containsKey("target")) {
+            return !rprop || Integer.parseInt(options.get("target")) > 1;
+        } else if (options.containsKey("tau")) {
+            return !rprop || Double.parseDouble(options.get("tau")) < 1;
+        } else {
+            return false;
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args, int first) {
+        Map<String, String> options = new HashMap<>();
+
+        for (int i = first; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+
+            if (separator <= 0) {
+                printUsage();
+            }
+
+            options.put(args[i].substring(0, separator), args[i].substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    private static MinibatchTrainer.Optimizer parseOptimizer(String optimizer) {
+        if (optimizer.equals("adam")) {
+            return MinibatchTrainer.Optimizer.ADAM;
+        } else if (optimizer.equals("rmsprop")) {
+            return MinibatchTrainer.Optimizer.RMSPROP;
+        }
+
+        printUsage();
+        return null;
+    }
+
+    private static QuantizedNetwork.Precision parsePrecision(String precision) {
+        // Full double precision unless asked otherwise. int8 isn't offered for play: it picks
+        // another action than double in too many states (see QuantizationReport)
+        if (precision == null || precision.equals("double")) {
+            return null;
+        } else if (precision.equals("float32")) {
+            return QuantizedNetwork.Precision.FLOAT32;
+        }
+
+        printUsage();
+        return null;
+    }
+
+    public static double[] testQPaddleController(GameBoard board, String nnFileName, int numEpisodes, int actionRepeat, SplittableRandom random) {
+        return testQPaddleController(board, nnFileName, numEpisodes, actionRepeat, null, random);
+    }
+
+    public static double[] testQPaddleController(GameBoard board, String nnFileName, int numEpisodes, int actionRepeat, QuantizedNetwork.Precision precision, SplittableRandom random) {
+        GameBoard boardCopy = new GameBoard(board.getWidth(), board.getHeight(), true, false, random.split());
+
+        // Create controller
+        QFunction qFunction = EncogQFunction.load(nnFileName, precision);
+
+        QPaddleController ai = new QPaddleController(boardCopy, PaddleController.LEFT, 0, qFunction, false, random.split());
+        ai.setActionRepeat(actionRepeat);
+
+        return testQPaddleController(boardCopy, ai, numEpisodes);
+    }
+
+    public static double[] testQPaddleController(GameBoard boardCopy, QPaddleController ai, int numEpisodes) {
         // Index Description
         // 0     Median # of hits
         // 1     Mean # of hits
@@ -204,11 +582,10 @@ public class PongUI extends JFrame {
         //
         double[] result = {0, 0, 0, 0, 0, 0};
 
-        GameBoard boardCopy = new GameBoard(board.getWidth(), board.getHeight(), true, false);
-
-        // Create controller
-        QPaddleController ai = new QPaddleController(boardCopy, PaddleController.LEFT, 0, 0, 0, nnFileName, false);
+        // ai must control boardCopy and is only listening to it while being tested
+        int actionRepeat = ai.getActionRepeat();
         ai.setMaxNumHits(30);
+        ai.startTrainingEpisode();
         boardCopy.addGameBoardListener(ai);
 
         // Keep track of number of hits
@@ -219,7 +596,7 @@ public class PongUI extends JFrame {
 
         for (int i = 0; i < numEpisodes; i++) {
             while (true) {
-                boardCopy.update();
+                boardCopy.update(actionRepeat);
 
                 if (boardCopy.isDone()) {
                     hits.add(new Double(ai.getNumHits()));
@@ -247,6 +624,8 @@ public class PongUI extends JFrame {
             }
         }
 
+        boardCopy.removeGameBoardListener(ai);
+
         // Sort hits: http://beginnersbook.com/2013/12/how-to-sort-arraylist-in-java/
         Collections.sort(hits);
 
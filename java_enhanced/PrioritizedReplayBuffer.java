@@ -0,0 +1,93 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public final class PrioritizedReplayBuffer {
+
+    public static final double DEFAULT_ALPHA = 0.6;
+    public static final double DEFAULT_BETA = 0.4;
+
+    // Keeps transitions with a zero TD error from never being sampled again
+    private static final double PRIORITY_EPSILON = 1e-3;
+
+    private final ReplayBuffer buffer;
+    private final SumTree priorities;
+
+    // How strongly priorities skew sampling (0 is uniform) and how much of that skew the
+    // importance-sampling weights correct for (1 is fully)
+    private final double alpha;
+    private double beta;
+
+    // New transitions get the largest priority seen so far, so each one is trained on at least once
+    private double maxPriority;
+
+    public PrioritizedReplayBuffer(ReplayBuffer buffer, double alpha, double beta) {
+        this.buffer = buffer;
+        this.alpha = alpha;
+        this.beta = beta;
+
+        priorities = new SumTree(buffer.getCapacity());
+        maxPriority = 1.0;
+
+        // Anything already in the buffer starts out like a new transition
+        for (int row = 0; row < buffer.size(); row++) {
+            priorities.set(row, maxPriority);
+        }
+    }
+
+    public int add(double[] state, int action, double reward, double[] nextState, boolean done) {
+        int row = buffer.add(state, action, reward, nextState, done);
+        priorities.set(row, maxPriority);
+
+        return row;
+    }
+
+    public void sample(int[] rows, double[] weights, int count, SplittableRandom random) {
+        double total = priorities.total();
+        double segment = total / count;
+        double maxWeight = 0;
+
+        // Stratified: one draw from each of count equal slices of the total priority
+        for (int i = 0; i < count; i++) {
+            int row = priorities.find((i + random.nextDouble()) * segment);
+            rows[i] = row;
+
+            // Importance-sampling weight (N * P(row))^-beta
+            weights[i] = Math.pow(buffer.size() * priorities.get(row) / total, -beta);
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+
+        // Normalize so weights only ever scale updates down
+        for (int i = 0; i < count; i++) {
+            weights[i] /= maxWeight;
+        }
+    }
+
+    public void updatePriorities(int[] rows, double[] tdErrors, int count) {
+        for (int i = 0; i < count; i++) {
+            double priority = Math.pow(Math.abs(tdErrors[i]) + PRIORITY_EPSILON, alpha);
+
+            priorities.set(rows[i], priority);
+            maxPriority = Math.max(maxPriority, priority);
+        }
+    }
+
+    public ReplayBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public void setBeta(double beta) {
+        this.beta = beta;
+    }
+}
@@ -0,0 +1,73 @@
+
+/**
+ *
+ * @author Andres
+ */
+public final class QBatch {
+
+    // Regression targets for QFunction.train(): row i asks for Q(state i, action i) = target i.
+    // Flat columns like ReplayBuffer, row i of states lives at [i * stateSize, (i + 1) * stateSize)
+    private final int capacity;
+    private final int stateSize;
+
+    private final double[] states;
+    private final int[] actions;
+    private final double[] targets;
+    private int size;
+
+    public QBatch(int capacity, int stateSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be at least 1");
+        }
+
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+
+        states = new double[capacity * stateSize];
+        actions = new int[capacity];
+        targets = new double[capacity];
+    }
+
+    public void add(double[] state, int action, double target) {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full");
+        }
+
+        System.arraycopy(state, 0, states, size * stateSize, stateSize);
+        actions[size] = action;
+        targets[size] = target;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public double[] getStates() {
+        return states;
+    }
+
+    public int[] getActions() {
+        return actions;
+    }
+
+    public double[] getTargets() {
+        return targets;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getStateSize() {
+        return stateSize;
+    }
+}
@@ -0,0 +1,382 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.TrainingContinuation;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+
+/**
+ *
+ * @author Andres
+ */
+public final class QLearner {
+
+    public static final int DEFAULT_REPLAY_CAPACITY = 100000;
+
+    private final BasicNetwork nn;
+    private final double gamma;
+
+    // Discount of the bootstrapped value in every target, gamma^n when transitions hold n-step returns
+    private double bootstrapDiscount;
+    private final int nnIterations;
+
+    // Private random stream for sampling batches
+    private final SplittableRandom random;
+
+    // Transitions are kept across batches, oldest overwritten first
+    private final ReplayBuffer replay;
+    private final ReplayDataSet replayData;
+
+    // Set when transitions are sampled by TD error instead of uniformly
+    private PrioritizedReplayBuffer prioritizedReplay;
+
+    // Transitions sampled per call to train(), 0 samples as many as were added since the last call
+    private int replayBatchSize;
+
+    // Frozen copy of nn used only to bootstrap targets, null bootstraps from nn itself. It follows
+    // nn either by a full copy every targetSyncInterval batches or by Polyak averaging with targetTau
+    private BasicNetwork targetNetwork;
+    private int targetSyncInterval;
+    private double targetTau;
+    private int numBatches;
+
+    // Double DQN: nn picks the next action and the target network scores it
+    private boolean doubleDQN;
+
+    // Set when nn is trained by small gradient steps as transitions arrive instead of by RPROP on
+    // whole batches: every added transition earns stepsPerTransition steps on minibatchSize samples
+    private MinibatchTrainer minibatchTrainer;
+    private int minibatchSize;
+    private double stepsPerTransition;
+    private double pendingSteps;
+    private double minibatchError;
+    private int numMinibatchErrors;
+
+    // Time spent in gradient steps, which run inside addTransition() on whatever thread adds
+    private long minibatchNanos;
+
+    // iRPROP+ step sizes and last gradients carried from one batch to the next, so a batch doesn't
+    // start from cold step sizes. Replaced after every batch and never modified, so it can be saved
+    // from another thread
+    private volatile TrainingContinuation rpropState;
+    private boolean keepRPROPState;
+
+    // Threads used by RPROP (0 lets Encog decide, which sums gradients in a nondeterministic order)
+    private int trainingThreadCount;
+
+    // Set when RPROP runs on our own worker pool instead of Encog's, which gives the same gradients
+    // whatever the number of workers
+    private ShardedRPROP shardedRPROP;
+
+    // Statistics of the added states, used to normalize every state the networks see
+    private InputNormalizer normalizer;
+
+    // Scratch buffers for addTransitions()
+    private final double[] state;
+    private final double[] nextState;
+
+    public QLearner(BasicNetwork nn, double gamma, int nnIterations, SplittableRandom random) {
+        this.nn = nn;
+        this.gamma = gamma;
+        bootstrapDiscount = gamma;
+        this.nnIterations = nnIterations;
+        this.random = random;
+
+        replay = new ReplayBuffer(DEFAULT_REPLAY_CAPACITY, QPaddleController.STATE_SIZE);
+        replayData = new ReplayDataSet(replay, nn, QPaddleController.getValidActions());
+
+        state = new double[QPaddleController.STATE_SIZE];
+        nextState = new double[QPaddleController.STATE_SIZE];
+
+        keepRPROPState = true;
+    }
+
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        if (normalizer != null) {
+            normalizer.update(state);
+        }
+
+        if (prioritizedReplay != null) {
+            prioritizedReplay.add(state, action, reward, nextState, done);
+        } else {
+            replay.add(state, action, reward, nextState, done);
+        }
+
+        if (minibatchTrainer != null) {
+            pendingSteps += stepsPerTransition;
+
+            // Steps earned while the buffer holds less than one batch are dropped
+            while (pendingSteps >= 1) {
+                pendingSteps--;
+
+                if (replay.size() >= minibatchSize) {
+                    minibatchStep();
+                }
+            }
+        }
+    }
+
+    private void minibatchStep() {
+        long start = System.nanoTime();
+
+        if (prioritizedReplay != null) {
+            replayData.sample(prioritizedReplay, minibatchSize, random);
+        } else {
+            replayData.sample(minibatchSize, random);
+        }
+
+        replayData.computeTargets(nn, targetNetwork != null ? targetNetwork : nn, bootstrapDiscount, doubleDQN);
+        minibatchError += minibatchTrainer.step(replayData);
+        numMinibatchErrors++;
+
+        if (prioritizedReplay != null) {
+            replayData.updatePriorities(prioritizedReplay, nn);
+        }
+
+        minibatchNanos += System.nanoTime() - start;
+    }
+
+    public void addTransitions(ReplayBuffer transitions) {
+        for (int i = 0; i < transitions.size(); i++) {
+            int row = transitions.getRow(i);
+
+            transitions.copyState(row, state, 0);
+            transitions.copyNextState(row, nextState, 0);
+            addTransition(state, transitions.getAction(row), transitions.getReward(row), nextState, transitions.isDone(row));
+        }
+    }
+
+    public double train() {
+        double error;
+
+        if (minibatchTrainer != null) {
+            // The steps already happened as transitions came in, report their mean error
+            error = numMinibatchErrors > 0 ? minibatchError / numMinibatchErrors : Double.NaN;
+            minibatchError = 0;
+            numMinibatchErrors = 0;
+            replay.resetAddedCount();
+        } else {
+            error = trainBatch();
+        }
+
+        numBatches++;
+
+        // Let the target network catch up
+        if (targetNetwork != null) {
+            if (targetTau > 0) {
+                NetworkWeights.blend(nn, targetNetwork, targetTau);
+            } else if (numBatches % targetSyncInterval == 0) {
+                NetworkWeights.copy(nn, targetNetwork);
+            }
+        }
+
+        return error;
+    }
+
+    private double trainBatch() {
+        int batchSize = replayBatchSize > 0 ? replayBatchSize : replay.getAddedCount();
+        replay.resetAddedCount();
+
+        // Draw a batch from the replay buffer and compute its targets with the current network
+        if (prioritizedReplay != null) {
+            replayData.sample(prioritizedReplay, batchSize, random);
+        } else {
+            replayData.sample(batchSize, random);
+        }
+
+        replayData.computeTargets(nn, targetNetwork != null ? targetNetwork : nn, bootstrapDiscount, doubleDQN);
+
+        double error = shardedRPROP != null ? trainSharded() : trainEncog();
+
+        // What the network still gets wrong decides how often each transition comes back
+        if (prioritizedReplay != null) {
+            replayData.updatePriorities(prioritizedReplay, nn);
+        }
+
+        return error;
+    }
+
+    private double trainEncog() {
+        // Train the neural network: Encog user guide
+        final ResilientPropagation trainingStrategy = new ResilientPropagation(nn, replayData);
+        trainingStrategy.setThreadCount(trainingThreadCount);
+
+        // Same network, new data: continue with the step sizes the last batches adapted
+        if (keepRPROPState && rpropState != null && trainingStrategy.isValidResume(rpropState)) {
+            trainingStrategy.resume(rpropState);
+        }
+
+        for (int i = 0; i < nnIterations; i++) {
+            trainingStrategy.iteration();
+        }
+
+        if (keepRPROPState) {
+            rpropState = trainingStrategy.pause();
+        }
+
+        trainingStrategy.finishTraining();
+
+        return trainingStrategy.getError();
+    }
+
+    private double trainSharded() {
+        // Same algorithm and state as trainEncog(), only the gradients are computed differently
+        if (keepRPROPState && rpropState != null && shardedRPROP.isValidResume(rpropState)) {
+            shardedRPROP.resume(rpropState);
+        } else {
+            shardedRPROP.reset();
+        }
+
+        for (int i = 0; i < nnIterations; i++) {
+            shardedRPROP.iteration(replayData);
+        }
+
+        if (keepRPROPState) {
+            rpropState = shardedRPROP.pause();
+        }
+
+        return shardedRPROP.getError();
+    }
+
+    public BasicNetwork getNetwork() {
+        return nn;
+    }
+
+    public void enablePrioritizedReplay(double alpha, double beta) {
+        prioritizedReplay = new PrioritizedReplayBuffer(replay, alpha, beta);
+    }
+
+    public void enableTargetNetwork(int syncInterval) {
+        if (syncInterval < 1) {
+            throw new IllegalArgumentException("Target network sync interval must be at least 1");
+        }
+
+        targetNetwork = (BasicNetwork) nn.clone();
+        targetSyncInterval = syncInterval;
+        targetTau = 0;
+    }
+
+    public void enableSoftTargetNetwork(double tau) {
+        if (tau <= 0 || tau > 1) {
+            throw new IllegalArgumentException("Target network tau must be in (0, 1]");
+        }
+
+        targetNetwork = (BasicNetwork) nn.clone();
+        targetSyncInterval = 0;
+        targetTau = tau;
+    }
+
+    public void setDoubleDQN(boolean doubleDQN) {
+        if (doubleDQN && targetNetwork == null) {
+            throw new IllegalStateException("Double DQN needs a target network to score the actions nn picks");
+        }
+
+        this.doubleDQN = doubleDQN;
+    }
+
+    public boolean isDoubleDQN() {
+        return doubleDQN;
+    }
+
+    public void enableMinibatchTraining(MinibatchTrainer.Optimizer optimizer, double learningRate, int batchSize, double stepsPerTransition) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Mini-batch size must be at least 1");
+        }
+
+        minibatchTrainer = new MinibatchTrainer(nn, optimizer, learningRate);
+        minibatchSize = batchSize;
+        this.stepsPerTransition = stepsPerTransition;
+        pendingSteps = 0;
+    }
+
+    public boolean isMinibatchTraining() {
+        return minibatchTrainer != null;
+    }
+
+    public long getNumGradientSteps() {
+        return minibatchTrainer != null ? minibatchTrainer.getNumSteps() : 0;
+    }
+
+    public long getMinibatchNanos() {
+        return minibatchNanos;
+    }
+
+    public void setKeepRPROPState(boolean keepRPROPState) {
+        this.keepRPROPState = keepRPROPState;
+
+        if (!keepRPROPState) {
+            rpropState = null;
+        }
+    }
+
+    public void saveRPROPState(File file) throws IOException {
+        // Nothing to save before the first batch, or when RPROP isn't what trains nn
+        TrainingContinuation state = rpropState;
+
+        if (state != null) {
+            TrainingCheckpoint.save(state, file);
+        }
+    }
+
+    public void loadRPROPState(File file) throws IOException {
+        rpropState = TrainingCheckpoint.load(file);
+    }
+
+    public void setReturnSteps(int steps) {
+        // Transitions added from now on must come from an NStepReturns window with the same steps
+        if (steps < 1) {
+            throw new IllegalArgumentException("Number of return steps must be at least 1");
+        }
+
+        bootstrapDiscount = Math.pow(gamma, steps);
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public void enableInputNormalization() {
+        // Starts collecting statistics, or keeps updating the ones loaded with the network
+        if (normalizer == null) {
+            setNormalizer(new InputNormalizer(QPaddleController.STATE_SIZE));
+        }
+
+        normalizer.setFrozen(false);
+    }
+
+    public void setNormalizer(InputNormalizer normalizer) {
+        // Shared with the controller that acts with nn, null feeds states in raw
+        this.normalizer = normalizer;
+        replayData.setNormalizer(normalizer);
+    }
+
+    public InputNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    public void setReplayBatchSize(int replayBatchSize) {
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    public int getReplaySize() {
+        return replay.size();
+    }
+
+    public void setTrainingThreadCount(int trainingThreadCount) {
+        this.trainingThreadCount = trainingThreadCount;
+    }
+
+    public void setGradientWorkers(int numWorkers) {
+        // 0 goes back to Encog's trainer
+        if (shardedRPROP != null) {
+            shardedRPROP.shutdown();
+        }
+
+        shardedRPROP = numWorkers > 0 ? new ShardedRPROP(nn, numWorkers) : null;
+    }
+
+    public int getGradientWorkers() {
+        return shardedRPROP != null ? shardedRPROP.getNumWorkers() : 0;
+    }
+}
@@ -0,0 +1,142 @@
+
+import java.io.File;
+import java.util.SplittableRandom;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/**
+ *
+ * @author Andres
+ */
+public class QNetworkMigration {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+        }
+
+        int numStates = 20000;
+        int iterations = 2000;
+        SplittableRandom random = new SplittableRandom();
+
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+
+            if (option.length != 2) {
+                printUsage();
+            } else if (option[0].equals("states")) {
+                numStates = Integer.parseInt(option[1]);
+            } else if (option[0].equals("iterations")) {
+                iterations = Integer.parseInt(option[1]);
+            } else if (option[0].equals("seed")) {
+                random = new SplittableRandom(Long.parseLong(option[1]));
+            } else {
+                printUsage();
+            }
+        }
+
+        BasicNetwork legacy = (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(args[0]));
+
+        if (legacy.getInputCount() == QPaddleController.STATE_SIZE) {
+            System.out.println(args[0] + " already has one output per action, nothing to migrate");
+            System.exit(0);
+        }
+
+        // Collect states the way the old network actually visits them: it plays greedily, with some
+        // exploration so the states around its usual path are covered too
+        GameBoard board = new GameBoard(300, 200, true, false, random.split());
+        QPaddleController player = new QPaddleController(board, PaddleController.LEFT, 0.1, EncogQFunction.load(args[0]), false, random.split());
+
+        double[][] states = new double[numStates][QPaddleController.STATE_SIZE];
+        int[] numRecorded = {0};
+
+        // Registered before the player so the state is recorded before it picks an action
+        board.addGameBoardListener((GameBoard b, boolean leftHit, boolean rightHit) -> {
+            if (numRecorded[0] < states.length) {
+                player.getStateInput(b, states[numRecorded[0]++]);
+            }
+        });
+        board.addGameBoardListener(player);
+
+        while (numRecorded[0] < states.length) {
+            board.update();
+
+            if (board.isDone()) {
+                board.reset();
+                player.startTrainingEpisode();
+            }
+        }
+
+        // Distill: the new network learns to output, for each action, what the old one gives for it
+        MLDataSet samples = new BasicMLDataSet();
+        double[] legacyInput = new double[QPaddleController.STATE_SIZE + 1];
+
+        for (double[] state : states) {
+            double[] ideal = new double[QPaddleController.getNumActions()];
+
+            System.arraycopy(state, 0, legacyInput, 0, state.length);
+
+            for (int a = 0; a < ideal.length; a++) {
+                legacyInput[state.length] = QPaddleController.getAction(a);
+                ideal[a] = legacy.compute(new BasicMLData(legacyInput)).getData(0);
+            }
+
+            samples.add(new BasicMLData(state), new BasicMLData(ideal));
+        }
+
+        BasicNetwork migrated = EncogQFunction.createQNetwork(random);
+        ResilientPropagation trainingStrategy = new ResilientPropagation(migrated, samples);
+
+        System.out.printf("%-10s %-12s\n", "Iteration", "Error");
+
+        for (int i = 1; i <= iterations; i++) {
+            trainingStrategy.iteration();
+
+            if (i % 100 == 0 || i == iterations) {
+                System.out.printf("%-10d %-12.6f\n", i, trainingStrategy.getError());
+            }
+        }
+
+        trainingStrategy.finishTraining();
+
+        // How often both networks would pick the same action
+        double[] migratedOutput = new double[QPaddleController.getNumActions()];
+        int agreements = 0;
+
+        for (MLDataPair pair : samples) {
+            migrated.compute(pair.getInputArray(), migratedOutput);
+
+            if (argMax(migratedOutput) == argMax(pair.getIdealArray())) {
+                agreements++;
+            }
+        }
+
+        System.out.printf("Greedy action agreement: %.2f%% of %d states\n", agreements * 100.0 / states.length, states.length);
+
+        // Save neural network to file: Encog user guide
+        EncogDirectoryPersistence.saveObject(new File(args[1]), migrated);
+        System.out.println("Saved to " + args[1]);
+    }
+
+    private static int argMax(double[] values) {
+        int best = 0;
+
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+
+        return best;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: QNetworkMigration <readNNFile> <writeNNFile> [states=<n>] [iterations=<n>] [seed=<n>]");
+        System.exit(1);
+    }
+}
@@ -1,25 +1,5 @@
 
-import java.io.File;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
-import org.encog.engine.network.activation.ActivationLOG;
-import org.encog.engine.network.activation.ActivationLinear;
-import org.encog.engine.network.activation.ActivationSigmoid;
-import org.encog.engine.network.activation.ActivationTANH;
-import org.encog.ml.data.MLData;
-import org.encog.ml.data.MLDataSet;
-import org.encog.ml.data.basic.BasicMLData;
-import org.encog.ml.data.basic.BasicMLDataSet;
-import org.encog.ml.train.MLTrain;
-import org.encog.neural.networks.BasicNetwork;
-import org.encog.neural.networks.layers.BasicLayer;
-import org.encog.neural.networks.training.propagation.back.Backpropagation;
-import org.encog.neural.networks.training.propagation.manhattan.ManhattanPropagation;
-import org.encog.neural.networks.training.propagation.quick.QuickPropagation;
-import static org.encog.neural.networks.training.propagation.resilient.RPROPType.iRPROPp;
-import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
-import org.encog.neural.networks.training.propagation.scg.ScaledConjugateGradient;
-import org.encog.persist.EncogDirectoryPersistence;
+import java.util.SplittableRandom;
 
 /**
  *
@@ -27,17 +7,27 @@ import org.encog.persist.EncogDirectoryPersistence;
  */
 public class QPaddleController extends PaddleController implements GameBoardListener {
 
+    // Never modified: actor threads share it, so it is private and only handed out as copies
     private static final double[] VALID_ACTIONS = {-0.25, 0, 0.25};
 
-    private GameBoard lastBoard;
+    // Features describing a state: paddle y, velocity and acceleration plus ball position and velocity
+    static final int STATE_SIZE = 7;
+
+    private final GameBoard lastBoard;
     private double lastAction;
 
-    private final BasicNetwork nn;
-    private MLDataSet samples;
+    // Evaluates every decision and learns from every transition while training
+    private final QFunction qFunction;
+
+    // Order in which actions are tried when looking for the best one, shuffled to break ties
+    private final int[] actionOrder;
+
+    // Scratch buffers for the decisions and for storing transitions
+    private final double[] stateInput;
+    private final double[] lastStateInput;
+    private final double[] qValues;
 
     private double epsilon;
-    private final double gamma;
-    private final int nnIterations;
 
     // Keep count of hits for the current episode
     private int numHits;
@@ -46,39 +36,39 @@ public class QPaddleController extends PaddleController implements GameBoardList
     // Whether we want to train the neural network or not
     private final boolean train;
 
-    public QPaddleController(GameBoard board, int type, double epsilon, double gamma, int nnIterations, String readNNFileName, boolean train) {
+    // Private random stream for exploration and tie breaking
+    private final SplittableRandom random;
+
+    // Frames the chosen action is held for, the board is expected to be stepped with update(actionRepeat)
+    private int actionRepeat;
+
+    public QPaddleController(GameBoard board, int type, double epsilon, QFunction qFunction, boolean train) {
+        this(board, type, epsilon, qFunction, train, new SplittableRandom());
+    }
+
+    public QPaddleController(GameBoard board, int type, double epsilon, QFunction qFunction, boolean train, SplittableRandom random) {
         super(board, type);
 
+        this.random = random;
+
         // Make a copy of the board
-        lastBoard = new GameBoard(board);
+        lastBoard = new GameBoard(board, random.split());
         lastAction = getPaddleAccelerationY(board);
 
-        // Initialize the samples dataset
-        samples = new BasicMLDataSet();
+        this.qFunction = qFunction;
 
-        // Check if we're reading from a neural network file: Encog user guide
-        if (readNNFileName != null) {
-            nn = (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(readNNFileName));
-        } else {
-            nn = new BasicNetwork();
-
-            nn.addLayer(new BasicLayer(null, true, 8));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 21));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 14));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 7));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 5));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 4));
-            nn.addLayer(new BasicLayer(new ActivationLOG(), true, 3));
-            nn.addLayer(new BasicLayer(new ActivationLinear(), false, 1));
-
-            nn.getStructure().finalizeStructure();
-            nn.reset();
+        actionOrder = new int[VALID_ACTIONS.length];
+
+        for (int i = 0; i < actionOrder.length; i++) {
+            actionOrder[i] = i;
         }
 
+        stateInput = new double[STATE_SIZE];
+        lastStateInput = new double[STATE_SIZE];
+        qValues = new double[VALID_ACTIONS.length];
+
         // Initialize parameters
         this.epsilon = epsilon;
-        this.gamma = gamma;
-        this.nnIterations = nnIterations;
 
         // Initialize the number of hits
         numHits = 0;
@@ -86,30 +76,33 @@ public class QPaddleController extends PaddleController implements GameBoardList
 
         // Whether or not we want to train the neural network
         this.train = train;
+
+        // Decide on every frame by default
+        actionRepeat = 1;
     }
 
     @Override
     public void gameBoardUpdated(GameBoard board, boolean leftHit, boolean rightHit) {
-        // Make a copy of the new board
-        GameBoard newBoard = new GameBoard(board);
-
-        // Figure out the reward for the state transition
+        // Figure out the reward for the state transition (which spans actionRepeat frames)
         double reward = 0;
 
+        // Hits first: a span can hold a hit and then the miss that ends the episode, and both count
+        if (type == PaddleController.LEFT && leftHit) {
+            numHits += board.getLeftHits();
+            reward = 10.0 * board.getLeftHits();
+        } else if (type == PaddleController.RIGHT && rightHit) {
+            numHits += board.getRightHits();
+            reward = 10.0 * board.getRightHits();
+        } else if (Math.abs(getPaddleY(board) + GameBoard.PADDLE_HEIGHT / 2 - board.getBallPosition().y) - GameBoard.BALL_DIAMETER / 2 < 5) {
+            // reward = 1.0;
+        }
+
         if (board.isDone()) {
             if (type == PaddleController.LEFT && board.getWhoLost() == GameBoard.LEFT_LOST) {
-                reward = -0.5 * Math.abs(getPaddleY(board) - board.getBallPosition().y + GameBoard.PADDLE_HEIGHT / 2 - GameBoard.BALL_DIAMETER / 2);
+                reward += -0.5 * Math.abs(getPaddleY(board) - board.getBallPosition().y + GameBoard.PADDLE_HEIGHT / 2 - GameBoard.BALL_DIAMETER / 2);
             } else if (type == PaddleController.RIGHT && board.getWhoLost() == GameBoard.RIGHT_LOST) {
-                reward = -0.5 * Math.abs(getPaddleY(board) - board.getBallPosition().y + GameBoard.PADDLE_HEIGHT / 2 - GameBoard.BALL_DIAMETER / 2);
+                reward += -0.5 * Math.abs(getPaddleY(board) - board.getBallPosition().y + GameBoard.PADDLE_HEIGHT / 2 - GameBoard.BALL_DIAMETER / 2);
             }
-        } else if (type == PaddleController.LEFT && leftHit) {
-            numHits++;
-            reward = 10.0;
-        } else if (type == PaddleController.RIGHT && rightHit) {
-            numHits++;
-            reward = 10.0;
-        } else if (Math.abs(getPaddleY(board) + GameBoard.PADDLE_HEIGHT / 2 - board.getBallPosition().y) - GameBoard.BALL_DIAMETER / 2 < 5) {
-            // reward = 1.0;
         }
 
         if (maxNumHits > 0 && numHits >= maxNumHits) {
@@ -117,60 +110,83 @@ public class QPaddleController extends PaddleController implements GameBoardList
         }
 
         // Choose an action according to an epsilon-greedy policy
-        double chosenAction = -1;
+        int chosenAction = -1;
         double nextQ = Double.NEGATIVE_INFINITY;
 
         if (train && board.isDone()) {
-            nextQ = 0;
-
-            // Add this observation to the samples dataset
+            // Add this observation to the replay buffer
             if (lastAction != Double.NEGATIVE_INFINITY) {
-                double[] target = {reward + gamma * nextQ};
-                samples.add(getNNInput(lastBoard, lastAction), new BasicMLData(target));
+                addSample(board, reward, true);
             }
         } else {
-            if (Math.random() < epsilon) {
-                // Generate random integer: http://stackoverflow.com/a/363692
-                chosenAction = VALID_ACTIONS[ThreadLocalRandom.current().nextInt(0, VALID_ACTIONS.length)];
-                nextQ = nn.compute(getNNInput(board, chosenAction)).getData(0);
-
-                // Find nextQ (maximum among the next actions)
-                /*for (int i = 0; i < VALID_ACTIONS.length; i++) {
-                    double q = nn.compute(getNNInput(board, VALID_ACTIONS[i])).getData(0);
+            // A single call gives the Q-value of every action
+            getStateInput(board, stateInput);
+            qFunction.computeQValues(stateInput, qValues);
 
-                    if (q > nextQ) {
-                        nextQ = q;
-                    }
-                }*/
+            if (random.nextDouble() < epsilon) {
+                chosenAction = random.nextInt(VALID_ACTIONS.length);
             } else {
                 // Choose the best action
-                shuffleArray(VALID_ACTIONS);
-
-                for (int i = 0; i < VALID_ACTIONS.length; i++) {
-                    double q = nn.compute(getNNInput(board, VALID_ACTIONS[i])).getData(0);
+                shuffleArray(actionOrder, random);
 
-                    if (q > nextQ) {
-                        chosenAction = VALID_ACTIONS[i];
-                        nextQ = q;
+                for (int i = 0; i < actionOrder.length; i++) {
+                    if (qValues[actionOrder[i]] > nextQ) {
+                        chosenAction = actionOrder[i];
+                        nextQ = qValues[actionOrder[i]];
                     }
                 }
             }
 
             if (train) {
-                // Add this observation to the samples dataset
+                // Add this observation to the replay buffer
                 if (lastAction != Double.NaN) {
-                    double[] target = {reward + gamma * nextQ};
-                    samples.add(getNNInput(lastBoard, lastAction), new BasicMLData(target));
+                    addSample(board, reward, false);
                 }
 
-                // Update lastBoard and lastAction
-                lastBoard = newBoard;
-                lastAction = chosenAction;
+                // Update lastBoard and lastAction (in place, nothing else has touched the board yet)
+                lastBoard.copyFrom(board);
+                lastAction = VALID_ACTIONS[chosenAction];
             }
 
             // Execute the chosen action
-            setPaddleAccelerationY(board, chosenAction);
+            setPaddleAccelerationY(board, VALID_ACTIONS[chosenAction]);
+        }
+    }
+
+    private void addSample(GameBoard board, double reward, boolean done) {
+        int actionIndex = indexOfAction(lastAction);
+
+        // Episodes can start with an acceleration that isn't one of the actions
+        if (actionIndex < 0) {
+            return;
+        }
+
+        // What the transition turns into (targets, replay, n-step returns) is up to the Q-function
+        getStateInput(lastBoard, lastStateInput);
+        getStateInput(board, stateInput);
+        qFunction.addTransition(lastStateInput, actionIndex, reward, stateInput, done);
+    }
+
+    public static int getNumActions() {
+        return VALID_ACTIONS.length;
+    }
+
+    public static double getAction(int index) {
+        return VALID_ACTIONS[index];
+    }
+
+    public static double[] getValidActions() {
+        return VALID_ACTIONS.clone();
+    }
+
+    static int indexOfAction(double action) {
+        for (int i = 0; i < VALID_ACTIONS.length; i++) {
+            if (VALID_ACTIONS[i] == action) {
+                return i;
+            }
         }
+
+        return -1;
     }
 
     public double getPaddleY(GameBoard board) {
@@ -205,45 +221,27 @@ public class QPaddleController extends PaddleController implements GameBoardList
         }
     }
 
-    private MLData getNNInput(GameBoard board, double action) {
-        double input[] = {getPaddleY(board),
-            getPaddleVelocityY(board),
-            getPaddleAccelerationY(board),
-            board.getBallPosition().x,
-            board.getBallPosition().y,
-            board.getBallVelocity().x,
-            board.getBallVelocity().y,
-            action};
-        
-        return new BasicMLData(input);
+    void getStateInput(GameBoard board, double[] input) {
+        input[0] = getPaddleY(board);
+        input[1] = getPaddleVelocityY(board);
+        input[2] = getPaddleAccelerationY(board);
+        input[3] = board.getBallPosition().x;
+        input[4] = board.getBallPosition().y;
+        input[5] = board.getBallVelocity().x;
+        input[6] = board.getBallVelocity().y;
     }
 
     public void startTrainingEpisode() {
-        lastBoard = new GameBoard(board);
+        lastBoard.copyFrom(board);
         lastAction = getPaddleAccelerationY(board);
         numHits = 0;
-    }
 
-    public double commitSamplesToNN() {
-        // Train the neural network: Encog user guide
-        final MLTrain trainingStrategy = new ResilientPropagation(nn, samples);
-
-        for (int i = 0; i < nnIterations; i++) {
-            trainingStrategy.iteration();
-        }
-
-        trainingStrategy.finishTraining();
-
-        // Clear the samples
-        samples.close();
-        samples = new BasicMLDataSet();
-
-        return trainingStrategy.getError();
+        qFunction.startEpisode();
     }
 
-    public void commitNNToFile(String filename) {
-        // Save neural network to file: Encog user guide
-        EncogDirectoryPersistence.saveObject(new File(filename), nn);
+    public double commitSamples() {
+        // Learns from the transitions of the last batch of episodes, returns the mean error
+        return qFunction.commit();
     }
 
     public double getEpsilon() {
@@ -254,6 +252,22 @@ public class QPaddleController extends PaddleController implements GameBoardList
         this.epsilon = epsilon;
     }
 
+    public int getActionRepeat() {
+        return actionRepeat;
+    }
+
+    public void setActionRepeat(int actionRepeat) {
+        if (actionRepeat < 1) {
+            throw new IllegalArgumentException("Action repeat must be at least 1");
+        }
+
+        this.actionRepeat = actionRepeat;
+    }
+
+    public QFunction getQFunction() {
+        return qFunction;
+    }
+
     public int getNumHits() {
         return numHits;
     }
@@ -262,13 +276,11 @@ public class QPaddleController extends PaddleController implements GameBoardList
         this.maxNumHits = maxNumHits;
     }
 
-    private static void shuffleArray(double[] ar) {
+    private static void shuffleArray(int[] ar, SplittableRandom rnd) {
         // This code was taken and adapted from http://stackoverflow.com/a/1520212
-        Random rnd = ThreadLocalRandom.current();
-
         for (int i = ar.length - 1; i > 0; i--) {
             int index = rnd.nextInt(i + 1);
-            double a = ar[index];
+            int a = ar[index];
             ar[index] = ar[i];
             ar[i] = a;
         }
@@ -0,0 +1,94 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public class QValueCacheBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            printUsage();
+        }
+
+        int numEntries = 65536;
+        int numThreads = 4;
+        int numEpisodes = 200;
+        long seed = new SplittableRandom().nextLong();
+
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+
+            if (option.length != 2) {
+                printUsage();
+            } else if (option[0].equals("entries")) {
+                numEntries = Integer.parseInt(option[1]);
+            } else if (option[0].equals("threads")) {
+                numThreads = Integer.parseInt(option[1]);
+            } else if (option[0].equals("episodes")) {
+                numEpisodes = Integer.parseInt(option[1]);
+            } else if (option[0].equals("seed")) {
+                seed = Long.parseLong(option[1]);
+            } else {
+                printUsage();
+            }
+        }
+
+        System.out.printf("%-8s %-9s %-13s %-18s %-10s %-10s\n", "Cache", "Threads", "Episodes/sec", "Mean Miss Distance", "Hit Rate", "Evictions");
+
+        // Same seed for both runs, so the episodes only differ where a cached Q-value changes an action
+        for (boolean cached : new boolean[]{false, true}) {
+            QValueCache cache = cached ? new QValueCache(numEntries, QPaddleController.getNumActions(), QValueCache.defaultResolution()) : null;
+
+            double[] result = evaluate(args[0], cache, numThreads, numEpisodes, new SplittableRandom(seed));
+            System.out.printf("%-8s %-9d %-13.1f %-18.3f %-10s %-10s\n", cached ? cache.getCapacity() : "off", numThreads, result[0], result[1], cached ? String.format("%.1f%%", 100 * cache.getHitRate()) : "-", cached ? Long.toString(cache.getEvictions()) : "-");
+        }
+    }
+
+    private static double[] evaluate(String nnFileName, QValueCache cache, int numThreads, int numEpisodes, SplittableRandom random) throws InterruptedException {
+        // Every thread plays its own board with its own copy of the network, all sharing one cache
+        GameBoard[] boards = new GameBoard[numThreads];
+        QPaddleController[] controllers = new QPaddleController[numThreads];
+        double[][] results = new double[numThreads][];
+
+        for (int i = 0; i < numThreads; i++) {
+            boards[i] = new GameBoard(300, 200, true, false, random.split());
+            QFunction qFunction = EncogQFunction.load(nnFileName);
+
+            if (cache != null) {
+                qFunction = new CachedQFunction(qFunction, cache);
+            }
+
+            controllers[i] = new QPaddleController(boards[i], PaddleController.LEFT, 0, qFunction, false, random.split());
+        }
+
+        Thread[] threads = new Thread[numThreads];
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numThreads; i++) {
+            final int index = i;
+
+            threads[i] = new Thread(() -> results[index] = PongUI.testQPaddleController(boards[index], controllers[index], numEpisodes), "Evaluator-" + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double missDistance = 0;
+
+        for (double[] result : results) {
+            missDistance += result[5] / numThreads;
+        }
+
+        return new double[]{numThreads * numEpisodes / seconds, missDistance};
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: QValueCacheBenchmark <readNNFile> [entries=<n>] [threads=<n>] [episodes=<n>] [seed=<n>]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,102 @@
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public class ReplayBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: ReplayBenchmark <numTransitions> <batchSize> <numBatches>");
+            System.exit(1);
+        }
+
+        int numTransitions = Integer.parseInt(args[0]);
+        int batchSize = Integer.parseInt(args[1]);
+        int numBatches = Integer.parseInt(args[2]);
+
+        SplittableRandom random = new SplittableRandom(1);
+        ReplayBuffer buffer = new ReplayBuffer(numTransitions, QPaddleController.STATE_SIZE);
+        PrioritizedReplayBuffer prioritized = new PrioritizedReplayBuffer(buffer, PrioritizedReplayBuffer.DEFAULT_ALPHA, PrioritizedReplayBuffer.DEFAULT_BETA);
+
+        double[] state = new double[QPaddleController.STATE_SIZE];
+        double[] nextState = new double[QPaddleController.STATE_SIZE];
+
+        // Fill the buffer once before timing, the adds below then overwrite the oldest rows
+        for (int i = 0; i < numTransitions; i++) {
+            fill(state, nextState, random);
+            prioritized.add(state, random.nextInt(3), random.nextDouble(), nextState, false);
+        }
+
+        int[] rows = new int[batchSize];
+        double[] weights = new double[batchSize];
+        double[] tdErrors = new double[batchSize];
+
+        System.out.printf("%-20s %-12s %-10s %-14s\n", "Operation", "Transitions", "Batch", "Ops/sec");
+
+        // Run everything twice so the second round is measured with a warm JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < numBatches * batchSize; i++) {
+                prioritized.add(state, i % 3, 0, nextState, false);
+            }
+
+            report(print, "Prioritized add", numTransitions, 1, (long) numBatches * batchSize, System.nanoTime() - start);
+
+            start = System.nanoTime();
+
+            for (int i = 0; i < numBatches; i++) {
+                buffer.sample(rows, batchSize, random);
+            }
+
+            report(print, "Uniform sample", numTransitions, batchSize, (long) numBatches * batchSize, System.nanoTime() - start);
+
+            start = System.nanoTime();
+
+            for (int i = 0; i < numBatches; i++) {
+                prioritized.sample(rows, weights, batchSize, random);
+            }
+
+            report(print, "Prioritized sample", numTransitions, batchSize, (long) numBatches * batchSize, System.nanoTime() - start);
+
+            long sampleNanos = 0;
+            long updateNanos = 0;
+
+            for (int i = 0; i < numBatches; i++) {
+                start = System.nanoTime();
+                prioritized.sample(rows, weights, batchSize, random);
+                sampleNanos += System.nanoTime() - start;
+
+                // Made-up TD errors, heavy-tailed like the real ones (a few hits and misses, mostly small)
+                for (int j = 0; j < batchSize; j++) {
+                    tdErrors[j] = random.nextDouble() < 0.02 ? 10 * random.nextDouble() : 0.1 * random.nextDouble();
+                }
+
+                start = System.nanoTime();
+                prioritized.updatePriorities(rows, tdErrors, batchSize);
+                updateNanos += System.nanoTime() - start;
+            }
+
+            report(print, "Priority update", numTransitions, batchSize, (long) numBatches * batchSize, updateNanos);
+            report(print, "Sample after update", numTransitions, batchSize, (long) numBatches * batchSize, sampleNanos);
+        }
+    }
+
+    private static void fill(double[] state, double[] nextState, SplittableRandom random) {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = random.nextDouble();
+            nextState[i] = random.nextDouble();
+        }
+    }
+
+    private static void report(boolean print, String operation, int numTransitions, int batchSize, long ops, long nanos) {
+        if (print) {
+            System.out.printf("%-20s %-12d %-10d %-14.0f\n", operation, numTransitions, batchSize, ops / (nanos / 1e9));
+        }
+    }
+}
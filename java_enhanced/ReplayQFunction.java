@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Andres
+ */
+public final class ReplayQFunction implements QFunction {
+
+    // Learns from the controller's transitions through a QLearner (replay buffer, target network,
+    // RPROP or mini-batch steps) that trains the adapter's network in place. Decisions see the
+    // network behind the learner's input statistics, as the learner does
+    private final EncogQFunction network;
+    private final QLearner learner;
+    private final NormalizedQFunction acting;
+
+    public ReplayQFunction(EncogQFunction network, QLearner learner) {
+        if (learner.getNetwork() != network.getNetwork()) {
+            throw new IllegalArgumentException("The learner must train the adapter's network");
+        }
+
+        this.network = network;
+        this.learner = learner;
+
+        acting = new NormalizedQFunction(network, learner::getNormalizer);
+    }
+
+    public static ReplayQFunction load(String readNNFileName, double gamma, int nnIterations, SplittableRandom random) {
+        // For training, a null file name starts from a new network
+        EncogQFunction network = new EncogQFunction(readNNFileName != null ? EncogQFunction.loadNetwork(readNNFileName) : EncogQFunction.createQNetwork(random), nnIterations);
+        QLearner learner = new QLearner(network.getNetwork(), gamma, nnIterations, random.split());
+
+        if (readNNFileName != null) {
+            learner.setNormalizer(EncogQFunction.loadNormalizer(readNNFileName));
+        }
+
+        return new ReplayQFunction(network, learner);
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        acting.evaluate(states, actions, out, count);
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] output) {
+        acting.computeQValues(state, output);
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        return acting.train(batch);
+    }
+
+    @Override
+    public int getVersion() {
+        return acting.getVersion();
+    }
+
+    @Override
+    public void addTransition(double[] state, int action, double reward, double[] nextState, boolean done) {
+        learner.addTransition(state, action, reward, nextState, done);
+
+        // Mini-batch training may have just stepped nn, the next decision should use it
+        if (learner.isMinibatchTraining()) {
+            network.weightsChanged();
+        }
+    }
+
+    @Override
+    public double commit() {
+        double error = learner.train();
+        network.weightsChanged();
+
+        return error;
+    }
+
+    public void save(String filename) throws IOException {
+        EncogQFunction.save(filename, network.getNetwork(), learner.getNormalizer());
+    }
+
+    public QLearner getLearner() {
+        return learner;
+    }
+
+    public EncogQFunction getNetwork() {
+        return network;
+    }
+}
@@ -0,0 +1,72 @@
+
+/**
+ *
+ * @author Andres
+ */
+public final class SumTree {
+
+    private final int capacity;
+
+    // Leaves start at index leafCount, every inner node holds the sum of its two children and
+    // node 1 holds the total. Unused leaves stay at 0 so they are never picked
+    private final int leafCount;
+    private final double[] tree;
+
+    public SumTree(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.capacity = capacity;
+
+        int leaves = 1;
+
+        while (leaves < capacity) {
+            leaves <<= 1;
+        }
+
+        leafCount = leaves;
+        tree = new double[2 * leafCount];
+    }
+
+    public void set(int index, double priority) {
+        int node = leafCount + index;
+        tree[node] = priority;
+
+        // Recompute the sums on the way up instead of adding deltas, so rounding errors don't pile up
+        for (node >>= 1; node >= 1; node >>= 1) {
+            tree[node] = tree[2 * node] + tree[2 * node + 1];
+        }
+    }
+
+    public double get(int index) {
+        return tree[leafCount + index];
+    }
+
+    public double total() {
+        return tree[1];
+    }
+
+    public int find(double value) {
+        // Walk down to the leaf whose prefix-sum range contains value
+        int node = 1;
+
+        while (node < leafCount) {
+            int left = 2 * node;
+
+            // Rounding can leave value just past the last non-empty leaf, so never step into an empty subtree
+            if (value < tree[left] || tree[left + 1] == 0) {
+                node = left;
+            } else {
+                value -= tree[left];
+                node = left + 1;
+            }
+        }
+
+        return node - leafCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,208 @@
+
+/**
+ *
+ * @author Andres
+ */
+public final class TileCodedQFunction implements QFunction {
+
+    // Range and number of tiles of every state feature, values outside the range land in the edge tiles
+    private final double[] low;
+    private final double[] tileWidth;
+    private final int[] tiles;
+
+    private final int numTilings;
+    private final int numActions;
+
+    // Step size of each tile's weight, alpha split over the tilings so a full update moves Q by alpha * error
+    private final double stepSize;
+
+    // One row of action values per visited tile, tiles never visited read as 0
+    private final LongDoubleArrayMap table;
+
+    // Scratch tile keys of the last state, so a controller must not share its instance across threads
+    private final long[] keys;
+
+    private long numUpdates;
+
+    public TileCodedQFunction(double[] low, double[] high, int[] tiles, int numTilings, int numActions, double alpha) {
+        if (low.length != high.length || low.length != tiles.length) {
+            throw new IllegalArgumentException("Cannot tile code features with mismatched ranges and tile counts");
+        }
+
+        if (numTilings < 1) {
+            throw new IllegalArgumentException("Number of tilings must be at least 1");
+        }
+
+        this.low = low.clone();
+        this.tiles = tiles.clone();
+        this.numTilings = numTilings;
+        this.numActions = numActions;
+
+        tileWidth = new double[low.length];
+
+        for (int f = 0; f < low.length; f++) {
+            if (tiles[f] < 1 || high[f] <= low[f]) {
+                throw new IllegalArgumentException("Cannot tile code feature " + f + " with " + tiles[f] + " tiles over [" + low[f] + ", " + high[f] + "]");
+            }
+
+            tileWidth[f] = (high[f] - low[f]) / tiles[f];
+        }
+
+        // Keys pack the tiling and every tile coordinate (tiles + 1 values, tilings are offset) exactly
+        double keySpace = numTilings;
+
+        for (int f = 0; f < tiles.length; f++) {
+            keySpace *= tiles[f] + 1;
+        }
+
+        if (keySpace >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot tile code that many tiles, the keys would overflow");
+        }
+
+        stepSize = alpha / numTilings;
+        table = new LongDoubleArrayMap(numActions, 1024);
+        keys = new long[numTilings];
+    }
+
+    public static TileCodedQFunction forBoard(GameBoard board, int numTilings, int tilesPerFeature, double alpha) {
+        // Ranges of the features QPaddleController.getStateInput() produces. The acceleration only
+        // ever takes one of the action values, so it gets one tile per action
+        double maxAcceleration = 0;
+
+        for (double action : QPaddleController.getValidActions()) {
+            maxAcceleration = Math.max(maxAcceleration, Math.abs(action));
+        }
+
+        double[] low = {0, -GameBoard.PADDLE_MAX_SPEED, -maxAcceleration, 0, 0, -GameBoard.BALL_SPEED, -GameBoard.BALL_SPEED};
+        double[] high = {board.getHeight() - GameBoard.PADDLE_HEIGHT, GameBoard.PADDLE_MAX_SPEED, maxAcceleration, board.getWidth(), board.getHeight(), GameBoard.BALL_SPEED, GameBoard.BALL_SPEED};
+        int[] tiles = {tilesPerFeature, tilesPerFeature, QPaddleController.getNumActions(), tilesPerFeature, tilesPerFeature, tilesPerFeature, tilesPerFeature};
+
+        return new TileCodedQFunction(low, high, tiles, numTilings, QPaddleController.getNumActions(), alpha);
+    }
+
+    private void computeKeys(double[] states, int offset) {
+        for (int t = 0; t < numTilings; t++) {
+            long key = t;
+
+            for (int f = 0; f < tiles.length; f++) {
+                // Asymmetric offsets (1, 3, 5, ... tile fractions per tiling) so tilings don't line up diagonally
+                double tilingOffset = (double) ((2 * f + 1) * t % numTilings) / numTilings;
+                int coordinate = (int) Math.floor((states[offset + f] - low[f]) / tileWidth[f] + tilingOffset);
+
+                key = key * (tiles[f] + 1) + Math.max(0, Math.min(tiles[f], coordinate));
+            }
+
+            keys[t] = key;
+        }
+    }
+
+    @Override
+    public void evaluate(double[] states, int[] actions, double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            computeKeys(states, i * tiles.length);
+
+            if (actions == null) {
+                computeQValues(out, i * numActions);
+            } else {
+                out[i] = computeQValue(actions[i]);
+            }
+        }
+    }
+
+    @Override
+    public void computeQValues(double[] state, double[] qValues) {
+        computeKeys(state, 0);
+        computeQValues(qValues, 0);
+    }
+
+    private void computeQValues(double[] qValues, int offset) {
+        // Of the state computeKeys() was last called with
+        double[] values = table.getValues();
+
+        for (int a = 0; a < numActions; a++) {
+            qValues[offset + a] = 0;
+        }
+
+        for (int t = 0; t < numTilings; t++) {
+            int index = table.indexOf(keys[t]);
+
+            if (index >= 0) {
+                for (int a = 0; a < numActions; a++) {
+                    qValues[offset + a] += values[index + a];
+                }
+            }
+        }
+    }
+
+    private double computeQValue(int action) {
+        // Q(s, a) is the sum of the active tiles' weights
+        double q = 0;
+        double[] values = table.getValues();
+
+        for (int t = 0; t < numTilings; t++) {
+            int index = table.indexOf(keys[t]);
+
+            if (index >= 0) {
+                q += values[index + action];
+            }
+        }
+
+        return q;
+    }
+
+    @Override
+    public double train(QBatch batch) {
+        // One TD update per row, in order
+        double error = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            computeKeys(batch.getStates(), i * batch.getStateSize());
+
+            double difference = batch.getTargets()[i] - computeQValue(batch.getActions()[i]);
+
+            error += difference * difference;
+            updateQValue(batch.getActions()[i], difference);
+        }
+
+        return batch.size() > 0 ? error / batch.size() : Double.NaN;
+    }
+
+    @Override
+    public int getVersion() {
+        // Every update moves some Q-values
+        return (int) numUpdates;
+    }
+
+    public void update(double[] state, int action, double target) {
+        computeKeys(state, 0);
+        updateQValue(action, target - computeQValue(action));
+    }
+
+    private void updateQValue(int action, double error) {
+        // Each active tile moves by an equal share of the error
+        double delta = stepSize * error;
+
+        for (int t = 0; t < numTilings; t++) {
+            int index = table.insert(keys[t]);
+            table.getValues()[index + action] += delta;
+        }
+
+        numUpdates++;
+    }
+
+    public int getNumEntries() {
+        return table.size();
+    }
+
+    public long getMemoryBytes() {
+        return table.getMemoryBytes();
+    }
+
+    public long getNumUpdates() {
+        return numUpdates;
+    }
+
+    public int getNumTilings() {
+        return numTilings;
+    }
+}
@@ -0,0 +1,79 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import org.encog.neural.networks.training.propagation.TrainingContinuation;
+
+/**
+ *
+ * @author Andres
+ */
+public final class TrainingCheckpoint {
+
+    // Format: trainer type, number of arrays, then every array's name, length and values
+    private static final int VERSION = 1;
+
+    private TrainingCheckpoint() {
+    }
+
+    public static void save(TrainingContinuation state, File file) throws IOException {
+        int numArrays = 0;
+
+        for (Object value : state.getContents().values()) {
+            if (value instanceof double[]) {
+                numArrays++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(state.getTrainingType());
+            out.writeInt(numArrays);
+
+            for (Map.Entry<String, Object> entry : state.getContents().entrySet()) {
+                if (entry.getValue() instanceof double[]) {
+                    double[] values = (double[]) entry.getValue();
+
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(values.length);
+
+                    for (double value : values) {
+                        out.writeDouble(value);
+                    }
+                }
+            }
+        }
+    }
+
+    public static TrainingContinuation load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Cannot read training checkpoint " + file + ", unknown version");
+            }
+
+            TrainingContinuation state = new TrainingContinuation();
+            state.setTrainingType(in.readUTF());
+
+            int numArrays = in.readInt();
+
+            for (int i = 0; i < numArrays; i++) {
+                String key = in.readUTF();
+                double[] values = new double[in.readInt()];
+
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = in.readDouble();
+                }
+
+                state.set(key, values);
+            }
+
+            return state;
+        }
+    }
+}